@@ -0,0 +1,168 @@
+package com.thisday.auth;
+
+import com.thisday.config.AppConfig;
+import io.vertx.core.Handler;
+import io.vertx.ext.web.RoutingContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+
+/**
+ * Signs media URLs handed out by authenticated reads and checks them on the
+ * media routes, so serving a thumbnail costs one HMAC instead of a JWT
+ * verification.
+ * <p>
+ * A signature covers the resource (an asset ID, or a calendar sprite
+ * version), the user the URL was issued to and an expiry; {@code type},
+ * {@code w} and friends may be appended freely. The
+ * user is exposed to later handlers under {@link #USER_KEY} so Immich
+ * requests can be queued fairly per user. Expiries are rounded up to the next TTL
+ * boundary plus one, so every read within a window returns the same URL and
+ * browsers, the service worker and shared caches can reuse it. A URL is valid
+ * for between one and two TTLs.
+ */
+public class MediaUrlSigner implements Handler<RoutingContext> {
+
+    private static final Logger log =
+            LoggerFactory.getLogger(MediaUrlSigner.class);
+
+    public static final String USER_KEY = "mediaUser";
+
+    private static final String ALGORITHM = "HmacSHA256";
+    private static final int SIGNATURE_BYTES = 16;
+    private static final String SPRITE_PREFIX = "sprite:";
+
+    private final SecretKeySpec key;
+    private final ThreadLocal<Mac> macs;
+
+    public MediaUrlSigner() {
+        byte[] secret;
+        if (AppConfig.MEDIA_URL_SIGNING_KEY.isBlank() && AppConfig.MEDIA_REQUIRE_SIGNED_URLS) {
+            // a per-process key would break every URL on restart and differ between instances
+            log.error("MEDIA_URL_SIGNING_KEY missing while MEDIA_REQUIRE_SIGNED_URLS is on");
+            throw new IllegalStateException(
+                    "Missing required environment variable: MEDIA_URL_SIGNING_KEY"
+            );
+        }
+        if (AppConfig.MEDIA_URL_SIGNING_KEY.isBlank()) {
+            secret = new byte[32];
+            new SecureRandom().nextBytes(secret);
+            log.warn("MEDIA_URL_SIGNING_KEY not set; signed media URLs will not survive a restart");
+        } else {
+            secret = AppConfig.MEDIA_URL_SIGNING_KEY.getBytes(StandardCharsets.UTF_8);
+        }
+        this.key = new SecretKeySpec(secret, ALGORITHM);
+        this.macs = ThreadLocal.withInitial(this::newMac);
+
+        log.info(
+                "MediaUrlSigner initialized [ttl={}s, required={}]",
+                AppConfig.MEDIA_URL_TTL_S, AppConfig.MEDIA_REQUIRE_SIGNED_URLS
+        );
+    }
+
+    /**
+     * A signed {@code /api/media/immich/:assetId} URL for {@code userId},
+     * stable for the current TTL window, on {@code MEDIA_PUBLIC_BASE_URL}
+     * when the media server has an origin of its own.
+     */
+    public String sign(String assetId, String userId) {
+        long ttl = AppConfig.MEDIA_URL_TTL_S;
+        long expires = (nowSeconds() / ttl + 2) * ttl;
+        return AppConfig.MEDIA_PUBLIC_BASE_URL
+                + "/api/media/immich/" + URLEncoder.encode(assetId, StandardCharsets.UTF_8)
+                + "?u=" + URLEncoder.encode(userId, StandardCharsets.UTF_8)
+                + "&exp=" + expires
+                + "&sig=" + signature(assetId, userId, expires);
+    }
+
+    /**
+     * A signed {@code /api/media/sprite/:version} URL for {@code userId},
+     * like {@link #sign(String, String)}.
+     */
+    public String signSprite(String version, String userId) {
+        long ttl = AppConfig.MEDIA_URL_TTL_S;
+        long expires = (nowSeconds() / ttl + 2) * ttl;
+        return AppConfig.MEDIA_PUBLIC_BASE_URL
+                + "/api/media/sprite/" + version
+                + "?u=" + URLEncoder.encode(userId, StandardCharsets.UTF_8)
+                + "&exp=" + expires
+                + "&sig=" + signature(SPRITE_PREFIX + version, userId, expires);
+    }
+
+    @Override
+    public void handle(RoutingContext ctx) {
+        String version = ctx.pathParam("version");
+        // sprite signatures are namespaced so an asset signature cannot be replayed on one
+        String assetId = version != null ? SPRITE_PREFIX + version : ctx.pathParam("assetId");
+        String user = ctx.request().getParam("u", "");
+        String exp = ctx.request().getParam("exp");
+        String sig = ctx.request().getParam("sig");
+
+        if (sig == null) {
+            if (AppConfig.MEDIA_REQUIRE_SIGNED_URLS) {
+                log.debug("Unsigned media request rejected [assetId={}]", assetId);
+                ctx.response().setStatusCode(401).end();
+                return;
+            }
+            ctx.next();
+            return;
+        }
+
+        long expires;
+        try {
+            expires = Long.parseLong(exp);
+        } catch (NumberFormatException e) {
+            ctx.response().setStatusCode(403).end();
+            return;
+        }
+
+        long remaining = expires - nowSeconds();
+        byte[] expected = signature(assetId, user, expires).getBytes(StandardCharsets.US_ASCII);
+        if (remaining <= 0 || remaining > 2 * AppConfig.MEDIA_URL_TTL_S
+                || !MessageDigest.isEqual(expected, sig.getBytes(StandardCharsets.US_ASCII))) {
+            log.debug("Media signature rejected [assetId={}, expired={}]", assetId, remaining <= 0);
+            ctx.response().setStatusCode(403).end();
+            return;
+        }
+
+        ctx.put(USER_KEY, user);
+
+        // Shared caches must not keep serving the bytes after the URL expires.
+        ctx.addHeadersEndHandler(v -> {
+            if (ctx.response().headers().contains("Cache-Control")) {
+                ctx.response().putHeader("Cache-Control", "public, max-age=" + remaining + ", immutable");
+            }
+        });
+        ctx.next();
+    }
+
+    private String signature(String assetId, String userId, long expires) {
+        byte[] digest = macs.get().doFinal(
+                (assetId + "\n" + userId + "\n" + expires).getBytes(StandardCharsets.UTF_8));
+        byte[] truncated = new byte[SIGNATURE_BYTES];
+        System.arraycopy(digest, 0, truncated, 0, SIGNATURE_BYTES);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(truncated);
+    }
+
+    private Mac newMac() {
+        try {
+            Mac mac = Mac.getInstance(ALGORITHM);
+            mac.init(key);
+            return mac;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static long nowSeconds() {
+        return System.currentTimeMillis() / 1000;
+    }
+}
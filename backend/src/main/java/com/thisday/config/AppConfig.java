@@ -40,6 +40,18 @@ public class AppConfig {
         return dotenvValue;
     }
 
+    private static int envInt(String key, int defaultValue) {
+        return Integer.parseInt(env(key, String.valueOf(defaultValue)).trim());
+    }
+
+    private static long envLong(String key, long defaultValue) {
+        return Long.parseLong(env(key, String.valueOf(defaultValue)).trim());
+    }
+
+    private static boolean envBool(String key, boolean defaultValue) {
+        return Boolean.parseBoolean(env(key, String.valueOf(defaultValue)).trim());
+    }
+
     private static String require(String key) {
         String value = env(key, null);
         if (value == null || value.isBlank()) {
@@ -55,6 +67,17 @@ public class AppConfig {
     public static final String HTTP_PORT =
             env("HTTP_PORT", "8081");
 
+    // Dedicated media server: its own port, event loops and request cap; a blank port serves media only on HTTP_PORT
+    public static final String MEDIA_HTTP_PORT =
+            env("MEDIA_HTTP_PORT", "8082");
+    public static final int MEDIA_VERTICLE_INSTANCES =
+            envInt("MEDIA_VERTICLE_INSTANCES", Runtime.getRuntime().availableProcessors());
+    public static final int MEDIA_MAX_CONCURRENT_REQUESTS =
+            envInt("MEDIA_MAX_CONCURRENT_REQUESTS", 256);
+    // Origin clients reach the media server at (e.g. https://media.example.com); blank keeps media URLs relative
+    public static final String MEDIA_PUBLIC_BASE_URL =
+            env("MEDIA_PUBLIC_BASE_URL", "").replaceAll("/+$", "");
+
     public static final String MONGO_URI =
             require("MONGO_URI");
 
@@ -72,6 +95,184 @@ public class AppConfig {
     public static final String IMMICH_BASE_URL = require("IMMICH_BASE_URL");
     public static final String IMMICH_API_KEY = require("IMMICH_API_KEY");
 
+    // Immich transport: one pool per call type, shared by all services
+    public static final boolean IMMICH_HTTP2 =
+            envBool("IMMICH_HTTP2", false);
+    public static final int IMMICH_HTTP2_MULTIPLEXING_LIMIT =
+            envInt("IMMICH_HTTP2_MULTIPLEXING_LIMIT", 32);
+    public static final int IMMICH_CONNECT_TIMEOUT_MS =
+            envInt("IMMICH_CONNECT_TIMEOUT_MS", 5_000);
+    public static final int IMMICH_KEEP_ALIVE_TIMEOUT_S =
+            envInt("IMMICH_KEEP_ALIVE_TIMEOUT_S", 60);
+    public static final int IMMICH_MAX_WAIT_QUEUE =
+            envInt("IMMICH_MAX_WAIT_QUEUE", 1_000);
+    public static final int IMMICH_THUMBNAIL_POOL_SIZE =
+            envInt("IMMICH_THUMBNAIL_POOL_SIZE", 32);
+    public static final int IMMICH_ORIGINAL_POOL_SIZE =
+            envInt("IMMICH_ORIGINAL_POOL_SIZE", 16);
+    public static final int IMMICH_UPLOAD_POOL_SIZE =
+            envInt("IMMICH_UPLOAD_POOL_SIZE", 4);
+    public static final int IMMICH_METADATA_POOL_SIZE =
+            envInt("IMMICH_METADATA_POOL_SIZE", 8);
+    public static final long IMMICH_THUMBNAIL_TIMEOUT_MS =
+            envLong("IMMICH_THUMBNAIL_TIMEOUT_MS", 15_000);
+    public static final long IMMICH_ORIGINAL_TIMEOUT_MS =
+            envLong("IMMICH_ORIGINAL_TIMEOUT_MS", 60_000);
+    public static final long IMMICH_UPLOAD_TIMEOUT_MS =
+            envLong("IMMICH_UPLOAD_TIMEOUT_MS", 300_000);
+    public static final long IMMICH_METADATA_TIMEOUT_MS =
+            envLong("IMMICH_METADATA_TIMEOUT_MS", 10_000);
+
+    // Which fallback variant served an asset, and which endpoints 404, are remembered for a while
+    public static final long IMMICH_FALLBACK_MEMO_TTL_MS =
+            envLong("IMMICH_FALLBACK_MEMO_TTL_MS", 60L * 60 * 1000);
+    public static final long IMMICH_NEGATIVE_CACHE_TTL_MS =
+            envLong("IMMICH_NEGATIVE_CACHE_TTL_MS", 5L * 60 * 1000);
+    public static final int IMMICH_ENDPOINT_MEMO_MAX_ENTRIES =
+            envInt("IMMICH_ENDPOINT_MEMO_MAX_ENTRIES", 20_000);
+
+    // Hedged thumbnail/preview fetches; a delay of 0 tracks the p90 of recent responses
+    public static final boolean IMMICH_HEDGING_ENABLED =
+            envBool("IMMICH_HEDGING_ENABLED", true);
+    public static final long IMMICH_HEDGE_DELAY_MS =
+            envLong("IMMICH_HEDGE_DELAY_MS", 0);
+    public static final long IMMICH_HEDGE_MIN_DELAY_MS =
+            envLong("IMMICH_HEDGE_MIN_DELAY_MS", 50);
+
+    // Per-call-type circuit breakers: consecutive failures to open, and how long to stay open
+    public static final int IMMICH_BREAKER_FAILURE_THRESHOLD =
+            envInt("IMMICH_BREAKER_FAILURE_THRESHOLD", 5);
+    public static final long IMMICH_BREAKER_OPEN_MS =
+            envLong("IMMICH_BREAKER_OPEN_MS", 10_000);
+
+    // AIMD limit on outstanding Immich requests per call type, capped at the pool size
+    public static final boolean IMMICH_ADAPTIVE_LIMIT_ENABLED =
+            envBool("IMMICH_ADAPTIVE_LIMIT_ENABLED", true);
+    public static final int IMMICH_LIMIT_LATENCY_TOLERANCE_PCT =
+            envInt("IMMICH_LIMIT_LATENCY_TOLERANCE_PCT", 200);
+    public static final long IMMICH_LIMIT_QUEUE_TIMEOUT_MS =
+            envLong("IMMICH_LIMIT_QUEUE_TIMEOUT_MS", 250);
+
+    // Background work (thumbnail warming) gets at most this share of each limit
+    public static final int IMMICH_BACKGROUND_SHARE_PCT =
+            envInt("IMMICH_BACKGROUND_SHARE_PCT", 25);
+    public static final long IMMICH_BACKGROUND_QUEUE_TIMEOUT_MS =
+            envLong("IMMICH_BACKGROUND_QUEUE_TIMEOUT_MS", 5_000);
+
+    // Media disk cache (content-addressed, survives restarts)
+    public static final String MEDIA_CACHE_DIR =
+            env("MEDIA_CACHE_DIR", "media-cache");
+    public static final long MEDIA_CACHE_MAX_BYTES =
+            envLong("MEDIA_CACHE_MAX_BYTES", 2L * 1024 * 1024 * 1024);
+    public static final long MEDIA_CACHE_MAX_ENTRY_BYTES =
+            envLong("MEDIA_CACHE_MAX_ENTRY_BYTES", 64L * 1024 * 1024);
+
+    // In-memory hot tier for thumbnail/preview variants
+    public static final long MEDIA_MEMORY_CACHE_MAX_BYTES =
+            envLong("MEDIA_MEMORY_CACHE_MAX_BYTES", 64L * 1024 * 1024);
+    public static final long MEDIA_MEMORY_CACHE_MAX_ENTRY_BYTES =
+            envLong("MEDIA_MEMORY_CACHE_MAX_ENTRY_BYTES", 1024L * 1024);
+
+    // Answer If-None-Match / If-Modified-Since with 304 without asking Immich
+    public static final boolean MEDIA_LOCAL_REVALIDATION =
+            envBool("MEDIA_LOCAL_REVALIDATION", true);
+
+    // Block cache for Range requests against video originals
+    public static final boolean MEDIA_BLOCK_CACHE_ENABLED =
+            envBool("MEDIA_BLOCK_CACHE_ENABLED", true);
+    public static final long MEDIA_BLOCK_SIZE =
+            envLong("MEDIA_BLOCK_SIZE", 2L * 1024 * 1024);
+    public static final int MEDIA_BLOCK_READ_AHEAD =
+            envInt("MEDIA_BLOCK_READ_AHEAD", 2);
+    public static final long MEDIA_BLOCK_CACHE_MAX_BYTES =
+            envLong("MEDIA_BLOCK_CACHE_MAX_BYTES", 4L * 1024 * 1024 * 1024);
+
+    // Batched asset metadata (POST /api/media/immich/meta)
+    public static final int MEDIA_META_CACHE_MAX_ENTRIES =
+            envInt("MEDIA_META_CACHE_MAX_ENTRIES", 50_000);
+    public static final int MEDIA_META_CONCURRENCY =
+            envInt("MEDIA_META_CONCURRENCY", 4);
+    public static final int MEDIA_META_BATCH_MAX =
+            envInt("MEDIA_META_BATCH_MAX", 500);
+
+    // Resized renditions (w= / h= / fit=) rendered on a bounded worker pool
+    public static final int MEDIA_IMAGE_WORKERS =
+            envInt("MEDIA_IMAGE_WORKERS", Math.max(1, Runtime.getRuntime().availableProcessors() / 2));
+    public static final int MEDIA_RESIZE_MAX_PENDING =
+            envInt("MEDIA_RESIZE_MAX_PENDING", 64);
+    public static final int MEDIA_RESIZE_JPEG_QUALITY =
+            envInt("MEDIA_RESIZE_JPEG_QUALITY", 80);
+    // largest source body loaded into memory to resize (a fallback original can be huge)
+    public static final long MEDIA_RESIZE_MAX_SOURCE_BYTES =
+            envLong("MEDIA_RESIZE_MAX_SOURCE_BYTES", 8L * 1024 * 1024);
+
+    // Background thumbnail warming from read responses
+    public static final boolean MEDIA_WARM_ENABLED =
+            envBool("MEDIA_WARM_ENABLED", true);
+    public static final int MEDIA_WARM_CONCURRENCY =
+            envInt("MEDIA_WARM_CONCURRENCY", 2);
+    public static final int MEDIA_WARM_MAX_QUEUED =
+            envInt("MEDIA_WARM_MAX_QUEUED", 500);
+
+    // Pull thumbnails of fresh uploads into the cache once Immich has generated them
+    public static final boolean MEDIA_PREGEN_ENABLED =
+            envBool("MEDIA_PREGEN_ENABLED", true);
+    public static final int MEDIA_PREGEN_CONCURRENCY =
+            envInt("MEDIA_PREGEN_CONCURRENCY", 2);
+    public static final int MEDIA_PREGEN_MAX_ATTEMPTS =
+            envInt("MEDIA_PREGEN_MAX_ATTEMPTS", 8);
+    public static final long MEDIA_PREGEN_INITIAL_DELAY_MS =
+            envLong("MEDIA_PREGEN_INITIAL_DELAY_MS", 1_000);
+    public static final long MEDIA_PREGEN_MAX_DELAY_MS =
+            envLong("MEDIA_PREGEN_MAX_DELAY_MS", 30_000);
+    public static final int MEDIA_PREGEN_MAX_QUEUED =
+            envInt("MEDIA_PREGEN_MAX_QUEUED", 500);
+
+    // Files of one multi-file entry request uploaded to Immich at once (the upload pool caps it too)
+    public static final int MEDIA_UPLOAD_PARALLELISM =
+            envInt("MEDIA_UPLOAD_PARALLELISM", 3);
+
+    // Pipe pending-entry media uploads straight to Immich instead of spooling them to disk
+    public static final boolean MEDIA_STREAM_UPLOADS =
+            envBool("MEDIA_STREAM_UPLOADS", true);
+
+    // Storage saver: downscale and re-encode uploaded photos before they go to Immich
+    public static final boolean MEDIA_SAVER_DEFAULT =
+            envBool("MEDIA_SAVER_DEFAULT", false);
+    public static final int MEDIA_SAVER_LONG_EDGE =
+            envInt("MEDIA_SAVER_LONG_EDGE", 2560);
+    public static final int MEDIA_SAVER_JPEG_QUALITY =
+            envInt("MEDIA_SAVER_JPEG_QUALITY", 85);
+    public static final long MEDIA_SAVER_MIN_BYTES =
+            envLong("MEDIA_SAVER_MIN_BYTES", 512 * 1024);
+    public static final int MEDIA_SAVER_WORKERS =
+            envInt("MEDIA_SAVER_WORKERS", Math.max(1, Runtime.getRuntime().availableProcessors() / 2));
+
+    // Tiny inline JPEG placeholders computed from uploads and returned with entries
+    public static final boolean MEDIA_PLACEHOLDERS_ENABLED =
+            envBool("MEDIA_PLACEHOLDERS_ENABLED", true);
+    public static final int MEDIA_PLACEHOLDER_EDGE =
+            envInt("MEDIA_PLACEHOLDER_EDGE", 16);
+
+    // Let nginx send cached media files: answer with X-Accel-Redirect to this internal location
+    public static final boolean MEDIA_ACCEL_REDIRECT =
+            envBool("MEDIA_ACCEL_REDIRECT", false);
+    public static final String MEDIA_ACCEL_CACHE_LOCATION =
+            env("MEDIA_ACCEL_CACHE_LOCATION", "/_media-cache/");
+
+    // Comma-separated proxy addresses whose X-Forwarded-For is believed
+    public static final String MEDIA_TRUSTED_PROXIES =
+            env("MEDIA_TRUSTED_PROXIES", "");
+
+    // HMAC-signed media URLs; the key is required while signatures are enforced
+    // (a blank key with enforcement off means a random one per process, for local use)
+    public static final String MEDIA_URL_SIGNING_KEY =
+            env("MEDIA_URL_SIGNING_KEY", "");
+    public static final long MEDIA_URL_TTL_S =
+            envLong("MEDIA_URL_TTL_S", 6 * 60 * 60);
+    public static final boolean MEDIA_REQUIRE_SIGNED_URLS =
+            envBool("MEDIA_REQUIRE_SIGNED_URLS", true);
+
     public static final String CORS_ALLOWED_ORIGINS =
             env("CORS_ALLOWED_ORIGINS",
                     "https://thisdayui.hostingfrompurva.xyz,http://localhost:19006,http://localhost:3000,http://localhost:3001,http://localhost:13001,http://pi-purva:13001,http://127.0.0.1:13001");
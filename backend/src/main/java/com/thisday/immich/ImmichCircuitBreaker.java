@@ -0,0 +1,111 @@
+package com.thisday.immich;
+
+import io.vertx.core.json.JsonObject;
+
+/**
+ * Consecutive-failure circuit breaker for one kind of Immich call.
+ * <p>
+ * CLOSED lets everything through. After {@code failureThreshold} failures in
+ * a row it OPENs and rejects calls outright for {@code openMillis}. It then
+ * goes HALF_OPEN, where a single probe is let through: success closes the
+ * breaker, failure opens it again.
+ */
+final class ImmichCircuitBreaker {
+
+    enum State {
+        CLOSED,
+        OPEN,
+        HALF_OPEN
+    }
+
+    private final String name;
+    private final int failureThreshold;
+    private final long openMillis;
+
+    private State state = State.CLOSED;
+    private int consecutiveFailures;
+    private long openedAt;
+    private boolean probeInFlight;
+
+    private long rejected;
+    private long opened;
+
+    ImmichCircuitBreaker(String name, int failureThreshold, long openMillis) {
+        this.name = name;
+        this.failureThreshold = Math.max(1, failureThreshold);
+        this.openMillis = openMillis;
+    }
+
+    /**
+     * Whether a call may go out now. Every permitted call must be followed by
+     * exactly one {@link #onSuccess()}, {@link #onFailure()} or
+     * {@link #onCancelled()}.
+     */
+    synchronized boolean tryPass() {
+        if (state == State.OPEN && System.currentTimeMillis() - openedAt >= openMillis) {
+            state = State.HALF_OPEN;
+            probeInFlight = false;
+        }
+
+        switch (state) {
+            case CLOSED:
+                return true;
+            case HALF_OPEN:
+                if (!probeInFlight) {
+                    probeInFlight = true;
+                    return true;
+                }
+                rejected++;
+                return false;
+            default:
+                rejected++;
+                return false;
+        }
+    }
+
+    synchronized void onSuccess() {
+        consecutiveFailures = 0;
+        if (state == State.HALF_OPEN) {
+            state = State.CLOSED;
+            probeInFlight = false;
+        }
+    }
+
+    /**
+     * The call was abandoned by us; it says nothing about Immich, but a
+     * half-open probe must be freed so another can go out.
+     */
+    synchronized void onCancelled() {
+        probeInFlight = false;
+    }
+
+    synchronized void onFailure() {
+        consecutiveFailures++;
+        if (state == State.HALF_OPEN || consecutiveFailures >= failureThreshold) {
+            if (state != State.OPEN) {
+                opened++;
+            }
+            state = State.OPEN;
+            openedAt = System.currentTimeMillis();
+            probeInFlight = false;
+        }
+    }
+
+    /**
+     * Milliseconds until the next probe is allowed, for Retry-After.
+     */
+    synchronized long retryAfterMillis() {
+        return state == State.OPEN
+                ? Math.max(0, openMillis - (System.currentTimeMillis() - openedAt))
+                : 0;
+    }
+
+    synchronized JsonObject stats() {
+        return new JsonObject()
+                .put("name", name)
+                .put("state", state.name())
+                .put("consecutiveFailures", consecutiveFailures)
+                .put("timesOpened", opened)
+                .put("rejected", rejected);
+    }
+}
@@ -1,32 +1,63 @@
 package com.thisday.immich;
 
 import com.thisday.config.AppConfig;
+import com.thisday.immich.ImmichTransport.CallType;
+import com.thisday.immich.ImmichTransport.Dispatch;
+import com.thisday.immich.ImmichTransport.Priority;
 import io.vertx.core.Future;
+import io.vertx.core.MultiMap;
 import io.vertx.core.Promise;
 import io.vertx.core.Vertx;
 import io.vertx.core.buffer.Buffer;
-import io.vertx.core.http.HttpServerRequest;
-import io.vertx.core.http.HttpServerResponse;
-import io.vertx.ext.web.RoutingContext;
+import io.vertx.core.file.OpenOptions;
+import io.vertx.core.http.*;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.streams.ReadStream;
 import io.vertx.ext.web.client.*;
-import io.vertx.ext.web.codec.BodyCodec;
+import io.vertx.ext.web.multipart.FormDataPart;
 import io.vertx.ext.web.multipart.MultipartForm;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.UUID;
 
 public class ImmichClient {
 
     private static final Logger log = LoggerFactory.getLogger(ImmichClient.class);
 
-    private final WebClient client;
+    private static final int LATENCY_WINDOW = 256;
+    private static final int MIN_LATENCY_SAMPLES = 20;
+    private static final long INITIAL_HEDGE_DELAY_MS = 500;
+    private static final long MAX_HEDGE_DELAY_MS = 2_000;
+
+    private final Vertx vertx;
+    private final ImmichTransport transport;
     private final String baseUrl;
     private final String apiKey;
 
-    public ImmichClient(Vertx vertx) {
-        this.client = WebClient.create(vertx);
+    // (assetId:type) → fallback endpoint that last served it, when not the first choice
+    private final Map<String, Remembered> winningEndpoints = boundedLru();
+    // endpoint → when its 404 stops being trusted
+    private final Map<String, Long> missingEndpoints = boundedLru();
+
+    private long skippedEndpoints;
+
+    // ring buffer of recent time-to-first-answer for hedged small-variant fetches
+    private final long[] latencySamples = new long[LATENCY_WINDOW];
+    private int latencyCursor;
+    private int latencyCount;
+    private long hedgesStarted;
+    private long hedgesWon;
+
+    public ImmichClient(Vertx vertx, ImmichTransport transport) {
+        this.vertx = vertx;
+        this.transport = transport;
         this.baseUrl = AppConfig.IMMICH_BASE_URL;
         this.apiKey = AppConfig.IMMICH_API_KEY;
 
@@ -39,119 +70,327 @@ public class ImmichClient {
      * ============================================================
      */
     public Future<String> uploadAsset(
-            MultipartForm form) {
+            MultipartForm form,
+            String userId) {
+        return uploadAsset(form, userId, null).map(Upload::assetId);
+    }
 
-        String url = baseUrl + "/api/assets";
-        long startTime = System.currentTimeMillis();
+    /**
+     * Uploads the file spooled in {@code form}. When {@code abandon} (may be
+     * {@code null}) completes before Immich has answered, the request is
+     * reset and the upload fails instead of running to the end.
+     */
+    public Future<Upload> uploadAsset(
+            MultipartForm form,
+            String userId,
+            Future<Void> abandon) {
+
+        Map<String, String> attributes = new LinkedHashMap<>();
+        FormDataPart file = null;
+        for (FormDataPart part : form) {
+            if (part.isAttribute()) {
+                attributes.put(part.name(), part.value());
+            } else if (part.pathname() != null) {
+                file = part;
+            }
+        }
+        if (file == null) {
+            return Future.failedFuture("Invalid upload: no file");
+        }
 
-        Promise<String> promise = Promise.promise();
+        FormDataPart upload = file;
+        return vertx.fileSystem().open(upload.pathname(), new OpenOptions().setRead(true)).compose(data -> {
+            data.pause();
+            return uploadAssetStream(data, upload.filename(), upload.mediaType(), attributes, userId, abandon)
+                    .eventually(() -> data.close().otherwiseEmpty());
+        });
+    }
 
-        client.postAbs(url)
+    /**
+     * Uploads a file while it is still arriving: {@code data} is piped into
+     * the multipart request body with backpressure, so Immich receives the
+     * first bytes before the client has sent the last and nothing is spooled
+     * to disk. {@code data} must be paused; it is resumed once Immich has
+     * accepted the request. If {@code data} fails, the Immich request is
+     * reset rather than completed with a truncated file.
+     */
+    public Future<String> uploadAssetStream(
+            ReadStream<Buffer> data,
+            String filename,
+            String contentType,
+            Map<String, String> attributes,
+            String userId) {
+        return uploadAssetStream(data, filename, contentType, attributes, userId, null).map(Upload::assetId);
+    }
+
+    private Future<Upload> uploadAssetStream(
+            ReadStream<Buffer> data,
+            String filename,
+            String contentType,
+            Map<String, String> attributes,
+            String userId,
+            Future<Void> abandon) {
+
+        String boundary = "thisday-" + UUID.randomUUID();
+        RequestOptions options = new RequestOptions()
+                .setAbsoluteURI(baseUrl + "/api/assets")
+                .setMethod(HttpMethod.POST)
                 .putHeader("x-api-key", apiKey)
-                .sendMultipartForm(form, ar -> {
+                .putHeader("Content-Type", "multipart/form-data; boundary=" + boundary);
+
+        StringBuilder preamble = new StringBuilder();
+        attributes.forEach((name, value) -> preamble
+                .append("--").append(boundary).append("\r\n")
+                .append("Content-Disposition: form-data; name=\"").append(name).append("\"\r\n\r\n")
+                .append(value).append("\r\n"));
+        preamble.append("--").append(boundary).append("\r\n")
+                .append("Content-Disposition: form-data; name=\"assetData\"; filename=\"")
+                .append(headerSafe(filename)).append("\"\r\n")
+                .append("Content-Type: ")
+                .append(contentType == null ? "application/octet-stream" : headerSafe(contentType))
+                .append("\r\n\r\n");
 
-                    long duration = System.currentTimeMillis() - startTime;
+        long startTime = System.currentTimeMillis();
 
-                    if (ar.failed()) {
-                        log.error("Immich upload failed after {}ms", duration, ar.cause());
-                        promise.fail(ar.cause());
-                        return;
+        return transport.request(CallType.UPLOAD, Dispatch.interactive(userId), options).compose(request -> {
+            if (abandon != null && abandon.isComplete()) {
+                transport.cancel(request);
+                return Future.failedFuture("Upload cancelled");
+            }
+            request.setChunked(true);
+            request.write(preamble.toString());
+
+            data.pipe()
+                    .endOnSuccess(false)
+                    .endOnFailure(false)
+                    .to(request)
+                    .onComplete(ar -> {
+                        if (ar.failed()) {
+                            log.warn("Streamed upload aborted after {}ms: {}",
+                                    System.currentTimeMillis() - startTime, ar.cause().getMessage());
+                            transport.cancel(request);
+                            return;
+                        }
+                        request.end("\r\n--" + boundary + "--\r\n");
+                    });
+
+            Future<Upload> result = request.response().compose(response -> response.body().compose(body -> {
+                long duration = System.currentTimeMillis() - startTime;
+                if (response.statusCode() < 200 || response.statusCode() >= 300) {
+                    return Future.failedFuture(
+                            "Immich upload failed: " + response.statusCode() + " " + body);
+                }
+                JsonObject json = body.toJsonObject();
+                String assetId = json.getString("id");
+                // Immich answers a checksum match with the existing asset and status "duplicate"
+                boolean created = "created".equals(json.getString("status"));
+                log.info("Immich streamed upload success assetId={} status={} duration={}ms",
+                        assetId, json.getString("status"), duration);
+                return Future.succeededFuture(new Upload(assetId, created));
+            }));
+            if (abandon != null) {
+                abandon.onComplete(v -> {
+                    if (!result.isComplete()) {
+                        transport.cancel(request);
                     }
+                });
+            }
+            return result;
+        });
+    }
 
-                    HttpResponse<Buffer> response = ar.result();
+    /**
+     * An accepted upload. {@code created} is false when Immich matched the
+     * file to an asset it already had and returned that one instead.
+     */
+    public record Upload(String assetId, boolean created) {
+    }
 
-                    if (response.statusCode() < 200 || response.statusCode() >= 300) {
-                        promise.fail(
-                                "Immich upload failed: " + response.statusCode() + " " + response.bodyAsString());
-                        return;
-                    }
+    private static boolean isOriginal(String endpoint) {
+        return endpoint.endsWith("/original");
+    }
 
-                    try {
-                        String assetId = response.bodyAsJsonObject().getString("id");
-                        log.info("Immich upload success assetId={} duration={}ms", assetId, duration);
-                        promise.complete(assetId);
-                    } catch (Exception e) {
-                        promise.fail(e);
-                    }
-                });
-        return promise.future();
+    private static String headerSafe(String value) {
+        if (value == null || value.isBlank()) {
+            return "upload";
+        }
+        return value.replace("\"", "%22").replace("\r", "").replace("\n", "");
     }
 
-    public void streamAsset(RoutingContext ctx, String assetId, String type) {
-        HttpServerRequest request = ctx.request();
-        HttpServerResponse response = ctx.response();
+    /**
+     * Opens the first variant in the fallback chain that Immich answers with
+     * 200/206, or 304 when {@code conditionals} (If-None-Match /
+     * If-Modified-Since, may be {@code null}) still match. The response is
+     * returned paused: the caller must pipe it or
+     * {@link #discard(HttpClientResponse)} it.
+     */
+    public Future<HttpClientResponse> openAsset(
+            String assetId,
+            String type,
+            boolean isHeadRequest,
+            String range,
+            MultiMap conditionals
+    ) {
+        return openAsset(assetId, type, isHeadRequest, range, conditionals, Dispatch.ANONYMOUS);
+    }
 
-        // ✅ Handle HEAD requests (return headers only, no body)
-        boolean isHeadRequest = "HEAD".equalsIgnoreCase(request.method().name());
+    /**
+     * {@link #openAsset(String, String, boolean, String, MultiMap)} queued
+     * under {@code dispatch}'s priority class and tenant.
+     */
+    public Future<HttpClientResponse> openAsset(
+            String assetId,
+            String type,
+            boolean isHeadRequest,
+            String range,
+            MultiMap conditionals,
+            Dispatch dispatch
+    ) {
         String requestedType = type == null ? "thumbnail" : type.toLowerCase();
-        String range = request.getHeader("Range");
 
-        log.info("Streaming Immich asset assetId={} type={} method={}", assetId, type, request.method());
+        log.info("Opening Immich asset assetId={} type={} head={}", assetId, requestedType, isHeadRequest);
 
+        String memoKey = assetId + ":" + requestedType;
         List<String> endpoints = buildEndpointFallbacks(assetId, requestedType);
-        sendWithFallback(endpoints, 0, isHeadRequest, range, ar -> {
-            if (ar.failed()) {
-                log.error("Immich request failed for assetId={} type={}", assetId, requestedType, ar.cause());
-                if (!response.ended()) {
-                    response.setStatusCode(502).end();
-                }
-                return;
-            }
-
-            HttpResponse<Buffer> immichResp = ar.result();
-            int statusCode = immichResp.statusCode();
+        preferRemembered(memoKey, endpoints);
+
+        // Originals are large and slow by nature; only small variants are hedged,
+        // and only when someone is waiting for them.
+        boolean hedge = AppConfig.IMMICH_HEDGING_ENABLED
+                && dispatch.priority() == Priority.INTERACTIVE
+                && !"full".equals(requestedType)
+                && !"original".equals(requestedType);
+
+        return new VariantFetch(
+                memoKey,
+                endpoints,
+                isHeadRequest,
+                range,
+                conditionals,
+                dispatch,
+                hedge ? hedgeDelayMs() : 0
+        ).start();
+    }
 
-            if (statusCode != 200 && statusCode != 206) {
-                log.error("Immich returned error status: {}", statusCode);
-                if (!response.ended()) {
-                    response.setStatusCode(statusCode).end();
-                }
-                return;
-            }
+    /**
+     * Asks for exactly one generated variant ({@code thumbnail} or
+     * {@code preview}) with no fallback and without touching the endpoint
+     * memos, for checking whether Immich has produced it yet. Returned
+     * paused whatever the status, like {@link #openAsset}. A 200 clears any
+     * 404s or fallbacks remembered for the asset while it was processing.
+     */
+    public Future<HttpClientResponse> openExactVariant(String assetId, String variant, Dispatch dispatch) {
+        RequestOptions options = new RequestOptions()
+                .setAbsoluteURI(baseUrl + "/api/assets/" + assetId + "/thumbnail?size=" + variant)
+                .setMethod(HttpMethod.GET)
+                .putHeader("x-api-key", apiKey);
+
+        return transport.request(CallType.THUMBNAIL, dispatch, options)
+                .compose(HttpClientRequest::send)
+                .map(response -> {
+                    response.pause();
+                    if (response.statusCode() == 200) {
+                        forget(assetId);
+                    }
+                    return response;
+                });
+    }
 
-            // Set status
-            response.setStatusCode(statusCode);
+    /**
+     * Drops every remembered 404 and fallback for the asset.
+     */
+    public synchronized void forget(String assetId) {
+        String prefix = "/api/assets/" + assetId + "/";
+        missingEndpoints.keySet().removeIf(endpoint -> endpoint.startsWith(prefix));
+        winningEndpoints.keySet().removeIf(memoKey -> memoKey.startsWith(assetId + ":"));
+    }
 
-            // Copy headers
-            copyHeader(immichResp, response, "Content-Type");
-            copyHeader(immichResp, response, "Content-Length");
-            copyHeader(immichResp, response, "Content-Range");
-            copyHeader(immichResp, response, "ETag");
-            copyHeader(immichResp, response, "Last-Modified");
+    /**
+     * Fetches {@code bytes=start-end} of the original, without falling back
+     * to other variants. Returned paused, like {@link #openAsset}.
+     */
+    public Future<HttpClientResponse> openOriginalRange(String assetId, long start, long end, Dispatch dispatch) {
+        String endpoint = "/api/assets/" + assetId + "/original";
+        if (isKnownMissing(endpoint)) {
+            return Future.failedFuture("Immich original not found: " + assetId);
+        }
 
-            String acceptRanges = immichResp.getHeader("Accept-Ranges");
-            if (acceptRanges != null) {
-                response.putHeader("Accept-Ranges", acceptRanges);
-            } else {
-                response.putHeader("Accept-Ranges", "bytes");
-            }
+        RequestOptions options = new RequestOptions()
+                .setAbsoluteURI(baseUrl + endpoint)
+                .setMethod(HttpMethod.GET)
+                .putHeader("x-api-key", apiKey)
+                .putHeader("Range", "bytes=" + start + "-" + end);
+
+        return transport.request(CallType.ORIGINAL, dispatch, options)
+                .compose(HttpClientRequest::send)
+                .compose(resp -> {
+                    int status = resp.statusCode();
+                    if (status == 200 || status == 206) {
+                        resp.pause();
+                        return Future.succeededFuture(resp);
+                    }
+                    rememberStatus(endpoint, status);
+                    discard(resp);
+                    return Future.failedFuture(
+                            "Immich original range failed: assetId=" + assetId + " status=" + status);
+                });
+    }
 
-            // ✅ CRITICAL: Force inline
-            response.putHeader("Content-Disposition", "inline");
+    /*
+     * ============================================================
+     * METADATA
+     * ============================================================
+     */
+    public Future<JsonObject> getAssetInfo(String assetId) {
+        String endpoint = "/api/assets/" + assetId;
+        if (isKnownMissing(endpoint)) {
+            return Future.failedFuture("Immich asset not found: " + assetId);
+        }
 
-            // Asset IDs are immutable; aggressive caching improves perceived load speed.
-            response.putHeader("Cache-Control", "public, max-age=31536000, immutable");
+        return transport.track(CallType.METADATA, () -> transport.web(CallType.METADATA)
+                        .getAbs(baseUrl + endpoint)
+                        .putHeader("x-api-key", apiKey)
+                        .putHeader("Accept", "application/json")
+                        .timeout(transport.timeoutMs(CallType.METADATA))
+                        .send())
+                .compose(response -> {
+                    rememberStatus(endpoint, response.statusCode());
+                    if (response.statusCode() == 404) {
+                        return Future.failedFuture("Immich asset not found: " + assetId);
+                    }
+                    if (response.statusCode() < 200 || response.statusCode() >= 300) {
+                        return Future.failedFuture(
+                                "Immich asset info failed: assetId=" + assetId + " status=" + response.statusCode());
+                    }
+                    return Future.succeededFuture(response.bodyAsJsonObject());
+                });
+    }
 
-            // CORS
-            response.putHeader("Access-Control-Allow-Origin", "*");
-            response.putHeader("Access-Control-Allow-Methods", "GET, HEAD, OPTIONS");
-            response.putHeader("Access-Control-Allow-Headers", "Range, Content-Type");
-            response.putHeader("Access-Control-Expose-Headers", "Content-Range, Content-Length, Accept-Ranges");
+    /**
+     * Moves {@code assetIds} to Immich's trash, where they can still be
+     * restored until Immich empties it.
+     */
+    public Future<Void> deleteAssets(List<String> assetIds) {
+        if (assetIds.isEmpty()) {
+            return Future.succeededFuture();
+        }
 
-            // ✅ For HEAD requests, only send headers (no body)
-            if (isHeadRequest) {
-                response.end();
-                return;
-            }
+        JsonObject body = new JsonObject()
+                .put("ids", new JsonArray(new ArrayList<>(assetIds)));
 
-            // Send body for GET requests
-            Buffer body = immichResp.body();
-            if (body != null && body.length() > 0) {
-                response.end(body);
-            } else {
-                response.end();
-            }
-        });
+        return transport.track(CallType.METADATA, () -> transport.web(CallType.METADATA)
+                        .deleteAbs(baseUrl + "/api/assets")
+                        .putHeader("x-api-key", apiKey)
+                        .timeout(transport.timeoutMs(CallType.METADATA))
+                        .sendJsonObject(body))
+                .compose(response -> {
+                    if (response.statusCode() < 200 || response.statusCode() >= 300) {
+                        return Future.failedFuture(
+                                "Immich asset delete failed: status=" + response.statusCode());
+                    }
+                    log.info("Trashed {} asset(s) in Immich", assetIds.size());
+                    return Future.succeededFuture();
+                });
     }
 
     private List<String> buildEndpointFallbacks(String assetId, String requestedType) {
@@ -181,54 +420,398 @@ public class ImmichClient {
         return endpoints;
     }
 
-    private void sendWithFallback(
-            List<String> endpoints,
-            int index,
-            boolean isHeadRequest,
-            String range,
-            io.vertx.core.Handler<io.vertx.core.AsyncResult<HttpResponse<Buffer>>> handler
-    ) {
-        if (index >= endpoints.size()) {
-            handler.handle(io.vertx.core.Future.failedFuture("All Immich fallback endpoints failed"));
-            return;
+    /**
+     * One {@link #openAsset} call. Walks the fallback chain and, when hedging,
+     * also starts the next endpoint if the current one has not answered within
+     * the hedge delay. Only generated variants are hedged to: {@code /original}
+     * (a whole photo or video) is reached only as a sequential fallback once
+     * the endpoints before it have failed. The first usable response wins and
+     * every request still in flight is reset.
+     */
+    private final class VariantFetch {
+
+        private final String memoKey;
+        private final List<String> endpoints;
+        private final boolean isHeadRequest;
+        private final String range;
+        private final MultiMap conditionals;
+        private final Dispatch dispatch;
+        private final long hedgeDelayMs; // 0 = plain sequential fallback
+        private final Promise<HttpClientResponse> promise = Promise.promise();
+        private final long startedAt = System.nanoTime();
+
+        private final List<HttpClientRequest> pending = new ArrayList<>();
+        private final boolean[] failed;
+        private int next;
+        private int running;
+        private long hedgeTimer = -1;
+        private boolean done;
+        private boolean answered;
+        private String rejection;
+
+        VariantFetch(
+                String memoKey,
+                List<String> endpoints,
+                boolean isHeadRequest,
+                String range,
+                MultiMap conditionals,
+                Dispatch dispatch,
+                long hedgeDelayMs
+        ) {
+            this.memoKey = memoKey;
+            this.endpoints = endpoints;
+            this.isHeadRequest = isHeadRequest;
+            this.range = range;
+            this.conditionals = conditionals;
+            this.dispatch = dispatch;
+            this.hedgeDelayMs = hedgeDelayMs;
+            this.failed = new boolean[endpoints.size()];
+        }
+
+        Future<HttpClientResponse> start() {
+            launchNext(false);
+            return promise.future();
+        }
+
+        private void launchNext(boolean hedge) {
+            int index;
+            synchronized (this) {
+                if (done) {
+                    return;
+                }
+                while (next < endpoints.size() && isKnownMissing(endpoints.get(next))) {
+                    log.debug("Skipping endpoint known to 404 endpoint={}", endpoints.get(next));
+                    countSkipped();
+                    failed[next++] = true;
+                }
+                if (next >= endpoints.size()) {
+                    if (running == 0) {
+                        done = true;
+                        boolean missing = endpoints.stream().allMatch(ImmichClient.this::isKnownMissing);
+                        promise.fail(missing
+                                ? "Immich asset not found: " + memoKey
+                                : rejection != null ? rejection : "All Immich fallback endpoints failed");
+                    }
+                    return;
+                }
+                if (hedge && isOriginal(endpoints.get(next))) {
+                    return;
+                }
+                index = next++;
+                running++;
+            }
+
+            if (hedge) {
+                countHedge(false);
+                log.debug("Hedging slow Immich request key={} endpoint={}", memoKey, endpoints.get(index));
+            }
+
+            send(index);
+            scheduleHedge();
+        }
+
+        private void scheduleHedge() {
+            if (hedgeDelayMs <= 0) {
+                return;
+            }
+            synchronized (this) {
+                if (done || next >= endpoints.size() || isOriginal(endpoints.get(next))) {
+                    return;
+                }
+                if (hedgeTimer >= 0) {
+                    vertx.cancelTimer(hedgeTimer);
+                }
+                hedgeTimer = vertx.setTimer(hedgeDelayMs, id -> {
+                    synchronized (this) {
+                        hedgeTimer = -1;
+                    }
+                    launchNext(true);
+                });
+            }
+        }
+
+        private void send(int index) {
+            String endpoint = endpoints.get(index);
+
+            RequestOptions options = new RequestOptions()
+                    .setAbsoluteURI(baseUrl + endpoint)
+                    .setMethod(isHeadRequest ? HttpMethod.HEAD : HttpMethod.GET)
+                    .putHeader("x-api-key", apiKey);
+
+            if (!isHeadRequest && range != null && endpoint.endsWith("/original")) {
+                options.putHeader("Range", range);
+            }
+
+            if (conditionals != null) {
+                conditionals.forEach(options::putHeader);
+            }
+
+            CallType callType = isOriginal(endpoint) ? CallType.ORIGINAL : CallType.THUMBNAIL;
+
+            transport.request(callType, dispatch, options)
+                    .compose(request -> {
+                        synchronized (this) {
+                            if (done) {
+                                transport.cancel(request);
+                                return Future.failedFuture("Superseded by a faster variant");
+                            }
+                            pending.add(request);
+                        }
+                        return request.send();
+                    })
+                    .onComplete(ar -> {
+                        if (ar.failed()) {
+                            String message = String.valueOf(ar.cause().getMessage());
+                            failed(index, null, message.startsWith(ImmichTransport.UNAVAILABLE) ? message : null);
+                            if (!isDone()) {
+                                log.warn("Immich request failed endpoint={} index={}", endpoint, index, ar.cause());
+                            }
+                            return;
+                        }
+
+                        HttpClientResponse resp = ar.result();
+                        int status = resp.statusCode();
+                        if (status == 200 || status == 206 || status == 304) {
+                            // Hold the body until the caller has attached its pipe.
+                            resp.pause();
+                            won(index, resp);
+                            return;
+                        }
+
+                        log.warn("Immich request non-success endpoint={} index={} status={}", endpoint, index, status);
+                        rememberStatus(endpoint, status);
+                        discard(resp);
+                        failed(index, resp.request(), null);
+                    });
+        }
+
+        private void won(int index, HttpClientResponse resp) {
+            List<HttpClientRequest> losers;
+            boolean fellBack = true;
+            synchronized (this) {
+                running--;
+                pending.remove(resp.request());
+                if (done) {
+                    // lost the race to another variant
+                    transport.cancel(resp.request());
+                    return;
+                }
+                done = true;
+                losers = new ArrayList<>(pending);
+                pending.clear();
+                if (hedgeTimer >= 0) {
+                    vertx.cancelTimer(hedgeTimer);
+                }
+                for (int i = 0; i < index; i++) {
+                    fellBack &= failed[i];
+                }
+            }
+
+            losers.forEach(transport::cancel);
+
+            if (index > 0 && !fellBack) {
+                countHedge(true);
+            }
+            // Whoever won, this is how long the caller waited. Sampling only
+            // primaries that won would drop exactly the slow ones hedging is for
+            // and drag the delay down until every fetch hedges.
+            if (hedgeDelayMs > 0) {
+                recordLatency((System.nanoTime() - startedAt) / 1_000_000);
+            }
+            // A hedge that merely beat a slow primary is not worth remembering.
+            if (fellBack) {
+                rememberWinner(memoKey, endpoints, endpoints.get(index));
+            }
+
+            promise.complete(resp);
         }
 
-        String endpoint = endpoints.get(index);
-        String url = baseUrl + endpoint;
+        private void failed(int index, HttpClientRequest request, String unavailable) {
+            boolean launch;
+            synchronized (this) {
+                running--;
+                failed[index] = true;
+                // only report Immich as unavailable when nothing got a real answer
+                if (unavailable == null) {
+                    answered = true;
+                    rejection = null;
+                } else if (!answered) {
+                    rejection = unavailable;
+                }
+                if (request != null) {
+                    pending.remove(request);
+                }
+                // In-flight hedges carry on; otherwise move down the chain now.
+                launch = !done && running == 0;
+            }
+            if (launch) {
+                launchNext(false);
+            }
+        }
 
-        HttpRequest<Buffer> req = isHeadRequest
-                ? client.headAbs(url)
-                : client.getAbs(url);
+        private synchronized boolean isDone() {
+            return done;
+        }
+    }
+
+    public synchronized JsonObject stats() {
+        return new JsonObject()
+                .put("rememberedFallbacks", winningEndpoints.size())
+                .put("knownMissingEndpoints", missingEndpoints.size())
+                .put("skippedEndpoints", skippedEndpoints)
+                .put("hedgeDelayMs", hedgeDelayMs())
+                .put("hedgesStarted", hedgesStarted)
+                .put("hedgesWon", hedgesWon)
+                .put("pools", transport.stats());
+    }
+
+    /*
+     * ============================================================
+     * Hedge delay (fixed, or p90 of recent primary latencies)
+     * ============================================================
+     */
+    private synchronized long hedgeDelayMs() {
+        if (AppConfig.IMMICH_HEDGE_DELAY_MS > 0) {
+            return AppConfig.IMMICH_HEDGE_DELAY_MS;
+        }
+        if (latencyCount < MIN_LATENCY_SAMPLES) {
+            return INITIAL_HEDGE_DELAY_MS;
+        }
+        long[] sorted = Arrays.copyOf(latencySamples, latencyCount);
+        Arrays.sort(sorted);
+        long p90 = sorted[(int) Math.ceil(sorted.length * 0.9) - 1];
+        return Math.max(AppConfig.IMMICH_HEDGE_MIN_DELAY_MS, Math.min(MAX_HEDGE_DELAY_MS, p90));
+    }
 
-        req.putHeader("x-api-key", apiKey);
+    private synchronized void recordLatency(long millis) {
+        latencySamples[latencyCursor] = millis;
+        latencyCursor = (latencyCursor + 1) % latencySamples.length;
+        latencyCount = Math.min(latencyCount + 1, latencySamples.length);
+    }
 
-        if (!isHeadRequest && range != null && endpoint.endsWith("/original")) {
-            req.putHeader("Range", range);
+    private synchronized void countHedge(boolean won) {
+        if (won) {
+            hedgesWon++;
+        } else {
+            hedgesStarted++;
         }
+    }
+
+    private synchronized void countSkipped() {
+        skippedEndpoints++;
+    }
 
-        req.send(ar -> {
-            if (ar.failed()) {
-                log.warn("Immich request failed endpoint={} index={}", endpoint, index, ar.cause());
-                sendWithFallback(endpoints, index + 1, isHeadRequest, range, handler);
+    /*
+     * ============================================================
+     * Fallback memoization / negative cache
+     * ============================================================
+     */
+    private void preferRemembered(String memoKey, List<String> endpoints) {
+        String winner;
+        synchronized (this) {
+            Remembered remembered = winningEndpoints.get(memoKey);
+            if (remembered == null) {
+                return;
+            }
+            if (remembered.expiresAt < System.currentTimeMillis()) {
+                winningEndpoints.remove(memoKey);
                 return;
             }
+            winner = remembered.endpoint;
+        }
+        if (endpoints.remove(winner)) {
+            endpoints.add(0, winner);
+        }
+    }
 
-            HttpResponse<Buffer> resp = ar.result();
-            int status = resp.statusCode();
-            if (status == 200 || status == 206) {
-                handler.handle(io.vertx.core.Future.succeededFuture(resp));
+    private void rememberWinner(String memoKey, List<String> endpoints, String endpoint) {
+        synchronized (this) {
+            if (endpoint.equals(endpoints.get(0)) && winningEndpoints.containsKey(memoKey)) {
                 return;
             }
+            if (endpoint.equals(primaryEndpoint(memoKey))) {
+                winningEndpoints.remove(memoKey);
+                return;
+            }
+            winningEndpoints.put(memoKey, new Remembered(
+                    endpoint,
+                    System.currentTimeMillis() + AppConfig.IMMICH_FALLBACK_MEMO_TTL_MS
+            ));
+        }
+        log.debug("Remembering fallback endpoint key={} endpoint={}", memoKey, endpoint);
+    }
 
-            log.warn("Immich request non-success endpoint={} index={} status={}", endpoint, index, status);
-            sendWithFallback(endpoints, index + 1, isHeadRequest, range, handler);
-        });
+    private String primaryEndpoint(String memoKey) {
+        int colon = memoKey.lastIndexOf(':');
+        return buildEndpointFallbacks(memoKey.substring(0, colon), memoKey.substring(colon + 1)).get(0);
     }
 
-    private void copyHeader(HttpResponse<?> source, HttpServerResponse target, String headerName) {
-        String value = source.getHeader(headerName);
-        if (value != null) {
-            target.putHeader(headerName, value);
+    private void rememberStatus(String endpoint, int status) {
+        // Only a 404 is permanent enough to skip; 5xx and timeouts are retried.
+        if (status != 404) {
+            return;
+        }
+        synchronized (this) {
+            missingEndpoints.put(endpoint, System.currentTimeMillis() + AppConfig.IMMICH_NEGATIVE_CACHE_TTL_MS);
+        }
+    }
+
+    private synchronized boolean isKnownMissing(String endpoint) {
+        Long until = missingEndpoints.get(endpoint);
+        if (until == null) {
+            return false;
+        }
+        if (until < System.currentTimeMillis()) {
+            missingEndpoints.remove(endpoint);
+            return false;
         }
+        return true;
+    }
+
+    private static <V> Map<String, V> boundedLru() {
+        return new LinkedHashMap<>(256, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, V> eldest) {
+                return size() > AppConfig.IMMICH_ENDPOINT_MEMO_MAX_ENTRIES;
+            }
+        };
+    }
+
+    private record Remembered(String endpoint, long expiresAt) {
+    }
+
+    /**
+     * Seconds a client should wait before retrying a call that failed with
+     * {@link ImmichTransport#UNAVAILABLE}.
+     */
+    public long retryAfterSeconds() {
+        return transport.retryAfterSeconds();
+    }
+
+    /**
+     * Which variant ({@code thumbnail}, {@code preview} or {@code full})
+     * actually answered an {@link #openAsset} call; differs from the one asked
+     * for when the fetch fell back.
+     */
+    public static String servedVariant(HttpClientResponse resp) {
+        String uri = resp.request().getURI();
+        if (uri.endsWith("/original")) {
+            return "full";
+        }
+        return uri.endsWith("size=preview") ? "preview" : "thumbnail";
+    }
+
+    /**
+     * Resets a response whose body we do not want at all, instead of
+     * draining it like {@link #discard(HttpClientResponse)}.
+     */
+    public void abandon(HttpClientResponse resp) {
+        transport.cancel(resp.request());
+    }
+
+    public static void discard(HttpClientResponse resp) {
+        // Drain the remaining body so the pooled connection can be reused.
+        resp.end();
+        resp.resume();
     }
 }
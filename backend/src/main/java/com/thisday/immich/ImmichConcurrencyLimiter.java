@@ -0,0 +1,259 @@
+package com.thisday.immich;
+
+import io.vertx.core.Context;
+import io.vertx.core.Future;
+import io.vertx.core.Promise;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * AIMD limit on outstanding requests of one kind to Immich.
+ * <p>
+ * Every response reports how long Immich took to answer. While that stays
+ * within {@code tolerance} times the recent best, and the limit is actually
+ * being used, the limit grows by about one per round trip; a slower answer,
+ * a timeout or a 5xx cuts it by a tenth. Only answers to requests sent after
+ * the last cut can cut again, so one slow round trip costs a tenth once
+ * rather than once per request that was in flight. Immich shares a small
+ * host with us, so backing off as soon as it slows down keeps its
+ * throughput from collapsing.
+ * <p>
+ * Requests over the limit wait briefly for a slot and then fail with
+ * {@link ImmichTransport#UNAVAILABLE}, which callers turn into 503. Waiting
+ * requests are served per tenant (user) in turn, so one user's burst cannot
+ * starve another's, and interactive requests always go before background
+ * ones. Background work never holds more than its share of the limit. A
+ * waiter is always completed on the context that queued it.
+ */
+final class ImmichConcurrencyLimiter {
+
+    private static final double DECREASE_FACTOR = 0.9;
+    // samples per window after which the latency baseline is re-learned
+    private static final int BASELINE_WINDOW = 250;
+
+    private final Vertx vertx;
+    private final String name;
+    private final boolean adaptive;
+    private final int maxLimit;
+    private final double tolerance;
+    private final long queueTimeoutMs;
+    private final long backgroundQueueTimeoutMs;
+    private final double backgroundShare;
+
+    private double limit;
+    private int inFlight;
+    private int backgroundInFlight;
+    // tenant → its waiting requests, in the order tenants take turns
+    private final Map<String, ArrayDeque<Waiter>> interactiveWaiters = new LinkedHashMap<>();
+    private final Map<String, ArrayDeque<Waiter>> backgroundWaiters = new LinkedHashMap<>();
+    private int waiting;
+
+    private long baselineNanos = -1;
+    private long windowMinNanos = Long.MAX_VALUE;
+    private int windowSamples;
+    private long lastDecreaseNanos = System.nanoTime();
+
+    private long queued;
+    private long timedOut;
+    private long decreases;
+
+    ImmichConcurrencyLimiter(
+            Vertx vertx,
+            String name,
+            boolean adaptive,
+            int maxLimit,
+            double tolerance,
+            long queueTimeoutMs,
+            long backgroundQueueTimeoutMs,
+            double backgroundShare
+    ) {
+        this.vertx = vertx;
+        this.name = name;
+        this.adaptive = adaptive;
+        this.maxLimit = Math.max(1, maxLimit);
+        this.tolerance = tolerance;
+        this.queueTimeoutMs = queueTimeoutMs;
+        this.backgroundQueueTimeoutMs = backgroundQueueTimeoutMs;
+        this.backgroundShare = backgroundShare;
+        this.limit = this.maxLimit;
+    }
+
+    /**
+     * Completes once the request may go out; every success must be followed
+     * by exactly one {@link #release(ImmichTransport.Dispatch)} with the same
+     * dispatch.
+     */
+    Future<Void> acquire(ImmichTransport.Dispatch dispatch) {
+        boolean background = dispatch.priority() == ImmichTransport.Priority.BACKGROUND;
+        Waiter waiter;
+        synchronized (this) {
+            boolean nobodyAhead = background ? waiting == 0 : interactiveWaiters.isEmpty();
+            if (nobodyAhead && canStart(background)) {
+                start(background);
+                return Future.succeededFuture();
+            }
+            waiter = new Waiter(dispatch.tenant(), background, vertx.getOrCreateContext());
+            (background ? backgroundWaiters : interactiveWaiters)
+                    .computeIfAbsent(waiter.tenant, t -> new ArrayDeque<>())
+                    .add(waiter);
+            waiting++;
+            queued++;
+        }
+        long timer = vertx.setTimer(background ? backgroundQueueTimeoutMs : queueTimeoutMs, id -> expire(waiter));
+        synchronized (this) {
+            waiter.timer = timer;
+        }
+        return waiter.promise.future();
+    }
+
+    void release(ImmichTransport.Dispatch dispatch) {
+        synchronized (this) {
+            inFlight--;
+            if (dispatch.priority() == ImmichTransport.Priority.BACKGROUND) {
+                backgroundInFlight--;
+            }
+        }
+        drain();
+    }
+
+    /**
+     * Feeds one response time into the limit; {@code overloaded} marks a
+     * timeout or 5xx, which always backs off.
+     */
+    void onSample(long rttNanos, boolean overloaded) {
+        if (!adaptive) {
+            return;
+        }
+        synchronized (this) {
+            windowMinNanos = Math.min(windowMinNanos, rttNanos);
+            if (baselineNanos < 0) {
+                baselineNanos = rttNanos;
+            }
+            if (++windowSamples >= BASELINE_WINDOW) {
+                // Re-learn the baseline so one lucky sample cannot pin it forever.
+                baselineNanos = windowMinNanos;
+                windowMinNanos = Long.MAX_VALUE;
+                windowSamples = 0;
+            }
+
+            if (overloaded || rttNanos > baselineNanos * tolerance) {
+                long now = System.nanoTime();
+                // sent before the last cut: that cut already answered for it
+                if (now - rttNanos - lastDecreaseNanos >= 0) {
+                    limit = Math.max(1, limit * DECREASE_FACTOR);
+                    lastDecreaseNanos = now;
+                    decreases++;
+                }
+            } else if (inFlight * 2 >= currentLimit()) {
+                limit = Math.min(maxLimit, limit + 1.0 / limit);
+            }
+        }
+        drain();
+    }
+
+    synchronized JsonObject stats() {
+        return new JsonObject()
+                .put("adaptive", adaptive)
+                .put("limit", currentLimit())
+                .put("maxLimit", maxLimit)
+                .put("inFlight", inFlight)
+                .put("backgroundInFlight", backgroundInFlight)
+                .put("waiting", waiting)
+                .put("waitingTenants", interactiveWaiters.size() + backgroundWaiters.size())
+                .put("baselineMs", baselineNanos < 0 ? null : baselineNanos / 1_000_000.0)
+                .put("decreases", decreases)
+                .put("queued", queued)
+                .put("timedOut", timedOut);
+    }
+
+    private int currentLimit() {
+        return (int) limit;
+    }
+
+    private boolean canStart(boolean background) {
+        if (inFlight >= currentLimit()) {
+            return false;
+        }
+        return !background || backgroundInFlight < Math.max(1, (int) (currentLimit() * backgroundShare));
+    }
+
+    private void start(boolean background) {
+        inFlight++;
+        if (background) {
+            backgroundInFlight++;
+        }
+    }
+
+    private void drain() {
+        while (true) {
+            Waiter next;
+            synchronized (this) {
+                if (!interactiveWaiters.isEmpty() && canStart(false)) {
+                    next = nextInTurn(interactiveWaiters);
+                } else if (interactiveWaiters.isEmpty() && !backgroundWaiters.isEmpty() && canStart(true)) {
+                    next = nextInTurn(backgroundWaiters);
+                } else {
+                    return;
+                }
+                start(next.background);
+                waiting--;
+            }
+            vertx.cancelTimer(next.timer);
+            if (Vertx.currentContext() == next.context) {
+                next.promise.complete();
+            } else {
+                next.context.runOnContext(v -> next.promise.complete());
+            }
+        }
+    }
+
+    /**
+     * Takes the oldest request of the tenant whose turn it is and sends that
+     * tenant to the back of the line.
+     */
+    private static Waiter nextInTurn(Map<String, ArrayDeque<Waiter>> queues) {
+        Iterator<Map.Entry<String, ArrayDeque<Waiter>>> turns = queues.entrySet().iterator();
+        Map.Entry<String, ArrayDeque<Waiter>> turn = turns.next();
+        turns.remove();
+        Waiter next = turn.getValue().poll();
+        if (!turn.getValue().isEmpty()) {
+            queues.put(turn.getKey(), turn.getValue());
+        }
+        return next;
+    }
+
+    private void expire(Waiter waiter) {
+        synchronized (this) {
+            Map<String, ArrayDeque<Waiter>> queues = waiter.background ? backgroundWaiters : interactiveWaiters;
+            ArrayDeque<Waiter> queue = queues.get(waiter.tenant);
+            if (queue == null || !queue.remove(waiter)) {
+                return;
+            }
+            if (queue.isEmpty()) {
+                queues.remove(waiter.tenant);
+            }
+            waiting--;
+            timedOut++;
+        }
+        waiter.promise.fail(ImmichTransport.UNAVAILABLE + ": " + name + " overloaded");
+    }
+
+    private static final class Waiter {
+        final Promise<Void> promise = Promise.promise();
+        final String tenant;
+        final boolean background;
+        final Context context;
+        long timer = -1;
+
+        Waiter(String tenant, boolean background, Context context) {
+            this.tenant = tenant;
+            this.background = background;
+            this.context = context;
+        }
+    }
+}
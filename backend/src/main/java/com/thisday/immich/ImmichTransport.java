@@ -0,0 +1,393 @@
+package com.thisday.immich;
+
+import com.thisday.config.AppConfig;
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.*;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.web.client.HttpResponse;
+import io.vertx.ext.web.client.WebClient;
+import io.vertx.ext.web.client.WebClientOptions;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * The single set of HTTP connections to Immich, shared by every service.
+ * <p>
+ * Each call type gets its own pool so a burst of grid thumbnails never
+ * queues behind a slow upload or a long video download, and each has its own
+ * pool size and response timeout. Connections are kept alive between calls
+ * and HTTP/2 can be enabled for the read paths, where many small requests
+ * multiplex well over a few connections.
+ * <p>
+ * Vert.x does not expose pool internals, so utilisation is tracked here: how
+ * many exchanges are active against the pool size, and how long requests
+ * waited for a connection.
+ * <p>
+ * Each call type is also a bulkhead with its own circuit breaker. At most
+ * {@code poolSize * (1 + BULKHEAD_WAITING_PER_CONNECTION)} exchanges may be
+ * active or waiting for a connection, and a breaker that has seen repeated
+ * connection errors, timeouts or 5xx answers fails calls immediately instead
+ * of letting them queue. Within that, an adaptive limiter decides how many
+ * requests are actually outstanding at Immich, shrinking as its response
+ * times rise; requests waiting for it are served interactive-first and
+ * fairly across users. Rejections fail with a message starting with
+ * {@link #UNAVAILABLE}.
+ */
+public class ImmichTransport {
+
+    private static final Logger log =
+            LoggerFactory.getLogger(ImmichTransport.class);
+
+    public static final String UNAVAILABLE = "Immich unavailable";
+
+    private static final int BULKHEAD_WAITING_PER_CONNECTION = 4;
+
+    public enum CallType {
+        UPLOAD,
+        THUMBNAIL,
+        ORIGINAL,
+        METADATA
+    }
+
+    public enum Priority {
+        INTERACTIVE,
+        BACKGROUND
+    }
+
+    /**
+     * Who a request is for: its priority class and the tenant (user, or
+     * client address when unknown) it is queued fairly against.
+     */
+    public record Dispatch(Priority priority, String tenant) {
+
+        public static final Dispatch ANONYMOUS = new Dispatch(Priority.INTERACTIVE, "");
+        public static final Dispatch BACKGROUND = new Dispatch(Priority.BACKGROUND, "");
+
+        public static Dispatch interactive(String tenant) {
+            return new Dispatch(Priority.INTERACTIVE, tenant == null ? "" : tenant);
+        }
+    }
+
+    private final Map<CallType, Channel> channels = new EnumMap<>(CallType.class);
+
+    // requests we reset on purpose (lost hedges, clients gone) are not Immich's fault
+    private final Set<HttpClientRequest> cancelled = ConcurrentHashMap.newKeySet();
+
+    public ImmichTransport(Vertx vertx) {
+        // Upload durations track file size, not Immich load, so uploads get a fixed limit.
+        channels.put(CallType.UPLOAD, new Channel(
+                vertx, CallType.UPLOAD,
+                AppConfig.IMMICH_UPLOAD_POOL_SIZE, AppConfig.IMMICH_UPLOAD_TIMEOUT_MS, false, false));
+        channels.put(CallType.THUMBNAIL, new Channel(
+                vertx, CallType.THUMBNAIL,
+                AppConfig.IMMICH_THUMBNAIL_POOL_SIZE, AppConfig.IMMICH_THUMBNAIL_TIMEOUT_MS, AppConfig.IMMICH_HTTP2, true));
+        channels.put(CallType.ORIGINAL, new Channel(
+                vertx, CallType.ORIGINAL,
+                AppConfig.IMMICH_ORIGINAL_POOL_SIZE, AppConfig.IMMICH_ORIGINAL_TIMEOUT_MS, AppConfig.IMMICH_HTTP2, true));
+        channels.put(CallType.METADATA, new Channel(
+                vertx, CallType.METADATA,
+                AppConfig.IMMICH_METADATA_POOL_SIZE, AppConfig.IMMICH_METADATA_TIMEOUT_MS, AppConfig.IMMICH_HTTP2, true));
+
+        log.info(
+                "Immich transport ready [http2={}, pools={}]",
+                AppConfig.IMMICH_HTTP2, statsOf(channels).encode()
+        );
+    }
+
+    /**
+     * Opens a streaming request on the pool for {@code type}. The exchange
+     * counts as active until its response has been fully received or the
+     * request fails. The breaker judges the call by its response headers.
+     */
+    public Future<HttpClientRequest> request(CallType type, RequestOptions options) {
+        return request(type, Dispatch.ANONYMOUS, options);
+    }
+
+    public Future<HttpClientRequest> request(CallType type, Dispatch dispatch, RequestOptions options) {
+        Channel channel = channels.get(type);
+        String rejection = channel.admit();
+        if (rejection != null) {
+            return Future.failedFuture(rejection);
+        }
+
+        // idle timeout between response packets, not a cap on the whole transfer
+        options.setTimeout(channel.timeoutMs);
+
+        return channel.limiter.acquire(dispatch).recover(err -> {
+            channel.abandoned();
+            return Future.failedFuture(err);
+        }).compose(permit -> {
+            long queuedAt = System.nanoTime();
+            return channel.http.request(options).onSuccess(request -> {
+                long sentAt = System.nanoTime();
+                channel.acquired(sentAt - queuedAt);
+                request.response().onComplete(ar -> {
+                    if (ar.failed()) {
+                        channel.completed(cancelled.remove(request) ? null : Boolean.FALSE, System.nanoTime() - sentAt);
+                        channel.released(dispatch, true);
+                    } else {
+                        channel.completed(ar.result().statusCode() < 500, System.nanoTime() - sentAt);
+                        ar.result().end().onComplete(end -> {
+                            cancelled.remove(request);
+                            channel.released(dispatch, end.failed());
+                        });
+                    }
+                });
+            }).onFailure(err -> {
+                channel.failedToAcquire(dispatch);
+                channel.completed(false, System.nanoTime() - queuedAt);
+            });
+        });
+    }
+
+    /**
+     * Resets a request we no longer want without counting it against Immich.
+     */
+    public void cancel(HttpClientRequest request) {
+        cancelled.add(request);
+        request.reset();
+    }
+
+    /**
+     * The buffered client for {@code type}; wrap each call in
+     * {@link #track(CallType, Supplier)} so it shows up in the pool metrics.
+     */
+    public WebClient web(CallType type) {
+        return channels.get(type).web;
+    }
+
+    public long timeoutMs(CallType type) {
+        return channels.get(type).timeoutMs;
+    }
+
+    public Future<HttpResponse<Buffer>> track(CallType type, Supplier<Future<HttpResponse<Buffer>>> call) {
+        return track(type, Dispatch.ANONYMOUS, call);
+    }
+
+    public Future<HttpResponse<Buffer>> track(
+            CallType type,
+            Dispatch dispatch,
+            Supplier<Future<HttpResponse<Buffer>>> call
+    ) {
+        Channel channel = channels.get(type);
+        String rejection = channel.admit();
+        if (rejection != null) {
+            return Future.failedFuture(rejection);
+        }
+        return channel.limiter.acquire(dispatch).recover(err -> {
+            channel.abandoned();
+            return Future.failedFuture(err);
+        }).compose(permit -> {
+            long sentAt = System.nanoTime();
+            channel.acquired(0);
+            return call.get().onComplete(ar -> {
+                channel.completed(ar.succeeded() && ar.result().statusCode() < 500, System.nanoTime() - sentAt);
+                channel.released(dispatch, ar.failed());
+            });
+        });
+    }
+
+    /**
+     * Seconds until the first open breaker lets a probe through again.
+     */
+    public long retryAfterSeconds() {
+        long millis = 0;
+        for (Channel channel : channels.values()) {
+            long wait = channel.breaker.retryAfterMillis();
+            if (wait > 0) {
+                millis = millis == 0 ? wait : Math.min(millis, wait);
+            }
+        }
+        return Math.max(1, (millis + 999) / 1000);
+    }
+
+    public JsonObject stats() {
+        return statsOf(channels);
+    }
+
+    // static so the constructor can log it without calling an overridable method
+    private static JsonObject statsOf(Map<CallType, Channel> channels) {
+        JsonObject stats = new JsonObject();
+        channels.forEach((type, channel) -> stats.put(type.name().toLowerCase(), channel.stats()));
+        return stats;
+    }
+
+    /*
+     * ============================================================
+     * One pool per call type
+     * ============================================================
+     */
+    private static final class Channel {
+
+        final HttpClient http;
+        final WebClient web;
+        final int poolSize;
+        final long timeoutMs;
+        final boolean http2;
+        final String name;
+        final int maxInFlight;
+        final ImmichCircuitBreaker breaker;
+        final ImmichConcurrencyLimiter limiter;
+
+        private int admitted;
+        private long bulkheadRejections;
+        private int active;
+        private int peakActive;
+        private long requests;
+        private long failures;
+        private long acquireFailures;
+        private long acquireWaitNanos;
+        private long maxAcquireWaitNanos;
+
+        @SuppressWarnings("deprecation")
+        Channel(Vertx vertx, CallType type, int poolSize, long timeoutMs, boolean http2, boolean adaptive) {
+            this.poolSize = poolSize;
+            this.timeoutMs = timeoutMs;
+            this.http2 = http2;
+            this.name = type.name().toLowerCase();
+            this.maxInFlight = poolSize * (1 + BULKHEAD_WAITING_PER_CONNECTION);
+            this.breaker = new ImmichCircuitBreaker(
+                    name,
+                    AppConfig.IMMICH_BREAKER_FAILURE_THRESHOLD,
+                    AppConfig.IMMICH_BREAKER_OPEN_MS
+            );
+            // A fixed-limit pool (uploads) is slow by nature, not because Immich
+            // is struggling, so its callers wait as long as a response may take.
+            this.limiter = new ImmichConcurrencyLimiter(
+                    vertx,
+                    name,
+                    adaptive && AppConfig.IMMICH_ADAPTIVE_LIMIT_ENABLED,
+                    poolSize,
+                    AppConfig.IMMICH_LIMIT_LATENCY_TOLERANCE_PCT / 100.0,
+                    adaptive ? AppConfig.IMMICH_LIMIT_QUEUE_TIMEOUT_MS : timeoutMs,
+                    adaptive ? AppConfig.IMMICH_BACKGROUND_QUEUE_TIMEOUT_MS : timeoutMs,
+                    AppConfig.IMMICH_BACKGROUND_SHARE_PCT / 100.0
+            );
+
+            HttpClientOptions options = new WebClientOptions()
+                    .setName("immich-" + type.name().toLowerCase())
+                    .setKeepAlive(true)
+                    .setKeepAliveTimeout(AppConfig.IMMICH_KEEP_ALIVE_TIMEOUT_S)
+                    .setIdleTimeout(AppConfig.IMMICH_KEEP_ALIVE_TIMEOUT_S)
+                    .setConnectTimeout(AppConfig.IMMICH_CONNECT_TIMEOUT_MS)
+                    .setMaxPoolSize(poolSize)
+                    .setMaxWaitQueueSize(AppConfig.IMMICH_MAX_WAIT_QUEUE)
+                    .setTryUseCompression(false);
+
+            if (http2) {
+                options.setProtocolVersion(HttpVersion.HTTP_2)
+                        .setUseAlpn(AppConfig.IMMICH_BASE_URL.startsWith("https"))
+                        .setHttp2ClearTextUpgrade(true)
+                        .setHttp2MaxPoolSize(Math.max(1, poolSize / AppConfig.IMMICH_HTTP2_MULTIPLEXING_LIMIT))
+                        .setHttp2MultiplexingLimit(AppConfig.IMMICH_HTTP2_MULTIPLEXING_LIMIT)
+                        .setHttp2KeepAliveTimeout(AppConfig.IMMICH_KEEP_ALIVE_TIMEOUT_S);
+            }
+
+            this.http = vertx.createHttpClient(options);
+            this.web = WebClient.wrap(http, (WebClientOptions) options);
+        }
+
+        /**
+         * Reserves a bulkhead slot and asks the breaker; returns the
+         * rejection message, or {@code null} when the call may proceed.
+         */
+        String admit() {
+            synchronized (this) {
+                if (admitted >= maxInFlight) {
+                    bulkheadRejections++;
+                    return UNAVAILABLE + ": " + name + " bulkhead full";
+                }
+                admitted++;
+            }
+            if (!breaker.tryPass()) {
+                synchronized (this) {
+                    admitted--;
+                }
+                return UNAVAILABLE + ": " + name + " circuit open";
+            }
+            return null;
+        }
+
+        /**
+         * Reports the call's outcome to the breaker and its response time to
+         * the limiter; {@code null} means the call was cancelled by us and
+         * says nothing about Immich.
+         */
+        void completed(Boolean healthy, long rttNanos) {
+            if (healthy == null) {
+                breaker.onCancelled();
+            } else if (healthy) {
+                breaker.onSuccess();
+                limiter.onSample(rttNanos, false);
+            } else {
+                breaker.onFailure();
+                limiter.onSample(rttNanos, true);
+            }
+        }
+
+        /**
+         * A call that passed {@link #admit()} but timed out waiting for a
+         * limiter slot.
+         */
+        void abandoned() {
+            breaker.onCancelled();
+            synchronized (this) {
+                admitted--;
+            }
+        }
+
+        synchronized void acquired(long waitNanos) {
+            active++;
+            requests++;
+            peakActive = Math.max(peakActive, active);
+            acquireWaitNanos += waitNanos;
+            maxAcquireWaitNanos = Math.max(maxAcquireWaitNanos, waitNanos);
+        }
+
+        void released(Dispatch dispatch, boolean failed) {
+            limiter.release(dispatch);
+            synchronized (this) {
+                admitted--;
+                active--;
+                if (failed) {
+                    failures++;
+                }
+            }
+        }
+
+        void failedToAcquire(Dispatch dispatch) {
+            limiter.release(dispatch);
+            synchronized (this) {
+                acquireFailures++;
+                admitted--;
+            }
+        }
+
+        synchronized JsonObject stats() {
+            return new JsonObject()
+                    .put("http2", http2)
+                    .put("poolSize", poolSize)
+                    .put("active", active)
+                    .put("peakActive", peakActive)
+                    .put("utilisation", poolSize > 0 ? Math.min(1.0, (double) active / poolSize) : 0.0)
+                    .put("requests", requests)
+                    .put("failures", failures)
+                    .put("acquireFailures", acquireFailures)
+                    .put("avgAcquireWaitMs", requests > 0 ? acquireWaitNanos / requests / 1_000_000.0 : 0.0)
+                    .put("maxAcquireWaitMs", maxAcquireWaitNanos / 1_000_000.0)
+                    .put("timeoutMs", timeoutMs)
+                    .put("maxInFlight", maxInFlight)
+                    .put("bulkheadRejections", bulkheadRejections)
+                    .put("breaker", breaker.stats())
+                    .put("limiter", limiter.stats());
+        }
+    }
+}
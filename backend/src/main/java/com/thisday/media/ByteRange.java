@@ -0,0 +1,92 @@
+package com.thisday.media;
+
+/**
+ * A single satisfiable byte range resolved against a known length.
+ */
+public final class ByteRange {
+
+    public final long start;
+    public final long end;
+
+    private ByteRange(long start, long end) {
+        this.start = start;
+        this.end = end;
+    }
+
+    public long length() {
+        return end - start + 1;
+    }
+
+    public String contentRange(long total) {
+        return "bytes " + start + "-" + end + "/" + total;
+    }
+
+    /**
+     * Parses a {@code Range} header against the representation length.
+     *
+     * @return the resolved range, {@code null} when the header is absent or not
+     * a single byte range (the full body should be served), or
+     * {@link #UNSATISFIABLE} when no byte of the range exists.
+     */
+    public static ByteRange parse(String header, long total) {
+        if (header == null || !header.startsWith("bytes=")) {
+            return null;
+        }
+
+        String spec = header.substring("bytes=".length()).trim();
+        if (spec.isEmpty() || spec.contains(",")) {
+            return null;
+        }
+
+        int dash = spec.indexOf('-');
+        if (dash < 0) {
+            return null;
+        }
+
+        try {
+            String first = spec.substring(0, dash).trim();
+            String last = spec.substring(dash + 1).trim();
+
+            if (first.isEmpty()) {
+                // suffix range: last N bytes
+                long suffix = Long.parseLong(last);
+                if (suffix <= 0 || total == 0) {
+                    return UNSATISFIABLE;
+                }
+                return new ByteRange(Math.max(0, total - suffix), total - 1);
+            }
+
+            long start = Long.parseLong(first);
+            long end = last.isEmpty() ? total - 1 : Math.min(Long.parseLong(last), total - 1);
+
+            if (start >= total || end < start) {
+                return UNSATISFIABLE;
+            }
+            return new ByteRange(start, end);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * The first byte position of a {@code bytes=N-[M]} header, or -1 when the
+     * header is absent, a suffix range or not a single byte range.
+     */
+    public static long startOf(String header) {
+        if (header == null || !header.startsWith("bytes=") || header.contains(",")) {
+            return -1;
+        }
+        String spec = header.substring("bytes=".length()).trim();
+        int dash = spec.indexOf('-');
+        if (dash <= 0) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(spec.substring(0, dash).trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    public static final ByteRange UNSATISFIABLE = new ByteRange(-1, -2);
+}
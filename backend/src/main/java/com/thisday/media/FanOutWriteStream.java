@@ -0,0 +1,209 @@
+package com.thisday.media;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.streams.WriteStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes every buffer to several targets (client responses, cache files).
+ * <p>
+ * The stream reports a full write queue while any live target is full, so a
+ * pipe feeding it is paused by the slowest consumer. Followers are the
+ * exception: while another target is still attached, a follower whose queue
+ * is full is detached instead of holding everyone back, and its detach
+ * handler learns how many bytes it got so it can catch up elsewhere. A
+ * target that fails is dropped and the others keep receiving data; only
+ * when no target is left does the stream surface an exception.
+ */
+public final class FanOutWriteStream implements WriteStream<Buffer> {
+
+    private static final Logger log =
+            LoggerFactory.getLogger(FanOutWriteStream.class);
+
+    private final List<WriteStream<Buffer>> targets = new ArrayList<>();
+    private final Map<WriteStream<Buffer>, Follower> followers = new HashMap<>();
+    private Handler<Throwable> exceptionHandler;
+    private Handler<Void> drainHandler;
+
+    public FanOutWriteStream(List<? extends WriteStream<Buffer>> targets) {
+        for (WriteStream<Buffer> target : targets) {
+            add(target);
+        }
+    }
+
+    public synchronized FanOutWriteStream add(WriteStream<Buffer> target) {
+        targets.add(target);
+        target.drainHandler(v -> checkDrained());
+        return this;
+    }
+
+    /**
+     * Adds a target that is detached rather than waited for when it falls
+     * behind; {@code detached} receives the number of bytes it was given.
+     */
+    public synchronized FanOutWriteStream addFollower(WriteStream<Buffer> target, Handler<Long> detached) {
+        followers.put(target, new Follower(detached));
+        return add(target);
+    }
+
+    public synchronized int size() {
+        return targets.size();
+    }
+
+    @Override
+    public synchronized FanOutWriteStream exceptionHandler(Handler<Throwable> handler) {
+        this.exceptionHandler = handler;
+        return this;
+    }
+
+    @Override
+    public Future<Void> write(Buffer data) {
+        List<Future<Void>> writes = new ArrayList<>();
+        for (WriteStream<Buffer> target : snapshot()) {
+            Follower detached = null;
+            synchronized (this) {
+                Follower follower = followers.get(target);
+                if (follower != null) {
+                    if (target.writeQueueFull() && hasAnchor()) {
+                        targets.remove(target);
+                        followers.remove(target);
+                        detached = follower;
+                    } else {
+                        follower.sent += data.length();
+                    }
+                }
+            }
+            if (detached != null) {
+                log.debug("Detaching slow fan-out follower after {} bytes", detached.sent);
+                detached.handler.handle(detached.sent);
+                continue;
+            }
+            writes.add(target.write(data).onFailure(err -> drop(target, err)));
+        }
+        return Future.join(writes).mapEmpty();
+    }
+
+    @Override
+    public void write(Buffer data, Handler<AsyncResult<Void>> handler) {
+        Future<Void> fut = write(data);
+        if (handler != null) {
+            fut.onComplete(handler);
+        }
+    }
+
+    @Override
+    public Future<Void> end() {
+        List<Future<Void>> ends = new ArrayList<>();
+        for (WriteStream<Buffer> target : snapshot()) {
+            ends.add(target.end().onFailure(err -> drop(target, err)));
+        }
+        return Future.join(ends).mapEmpty();
+    }
+
+    @Override
+    public void end(Handler<AsyncResult<Void>> handler) {
+        Future<Void> fut = end();
+        if (handler != null) {
+            fut.onComplete(handler);
+        }
+    }
+
+    @Override
+    public synchronized FanOutWriteStream setWriteQueueMaxSize(int maxSize) {
+        for (WriteStream<Buffer> target : targets) {
+            target.setWriteQueueMaxSize(maxSize);
+        }
+        return this;
+    }
+
+    @Override
+    public synchronized boolean writeQueueFull() {
+        boolean anchored = hasAnchor();
+        for (WriteStream<Buffer> target : targets) {
+            if (target.writeQueueFull() && !(anchored && followers.containsKey(target))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public synchronized FanOutWriteStream drainHandler(Handler<Void> handler) {
+        this.drainHandler = handler;
+        return this;
+    }
+
+    private void checkDrained() {
+        Handler<Void> handler;
+        synchronized (this) {
+            if (drainHandler == null || writeQueueFull()) {
+                return;
+            }
+            handler = drainHandler;
+        }
+        handler.handle(null);
+    }
+
+    /**
+     * Stops feeding {@code target}, e.g. because its client went away while
+     * the stream was paused and no write is pending to report the failure.
+     */
+    public void remove(WriteStream<Buffer> target, Throwable cause) {
+        drop(target, cause);
+    }
+
+    /**
+     * Whether a target that is not a follower is still attached, i.e. one
+     * that is worth pausing for and that followers can catch up from.
+     */
+    private boolean hasAnchor() {
+        for (WriteStream<Buffer> target : targets) {
+            if (!followers.containsKey(target)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void drop(WriteStream<Buffer> target, Throwable cause) {
+        Handler<Throwable> handler = null;
+        synchronized (this) {
+            followers.remove(target);
+            if (!targets.remove(target)) {
+                return;
+            }
+            log.debug("Dropping fan-out target, {} left", targets.size(), cause);
+            if (targets.isEmpty()) {
+                handler = exceptionHandler;
+            }
+        }
+        if (handler != null) {
+            handler.handle(cause);
+        } else {
+            // A full target that just failed may have been the one holding the pipe back.
+            checkDrained();
+        }
+    }
+
+    private synchronized List<WriteStream<Buffer>> snapshot() {
+        return new ArrayList<>(targets);
+    }
+
+    private static final class Follower {
+        final Handler<Long> handler;
+        long sent;
+
+        Follower(Handler<Long> handler) {
+            this.handler = handler;
+        }
+    }
+}
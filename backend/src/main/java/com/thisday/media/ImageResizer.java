@@ -0,0 +1,424 @@
+package com.thisday.media;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.*;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.io.*;
+import java.util.Iterator;
+
+/**
+ * Decodes, scales and re-encodes images as JPEG. Blocking and CPU bound; only
+ * call it from a worker thread.
+ */
+public final class ImageResizer {
+
+    private ImageResizer() {
+    }
+
+    /**
+     * @return the JPEG bytes, or {@code null} when ImageIO cannot decode the
+     * source format (e.g. WebP thumbnails)
+     */
+    public static byte[] resize(byte[] source, ResizeSpec spec, float quality) throws IOException {
+        BufferedImage image = ImageIO.read(new ByteArrayInputStream(source));
+        if (image == null) {
+            return null;
+        }
+        return encodeJpeg(scale(image, spec), quality);
+    }
+
+    /**
+     * Upright pixel dimensions of {@code file} plus, when {@code edge > 0}, a
+     * tiny JPEG of it whose longest edge is {@code edge} pixels for use as a
+     * blurred placeholder. The source is decoded subsampled, so even large
+     * photos cost a few milliseconds.
+     *
+     * @return the probe, or {@code null} when ImageIO cannot read the file
+     * (videos, HEIC, ...)
+     */
+    public static Probe probe(File file, int edge, float quality) throws IOException {
+        int sourceWidth;
+        int sourceHeight;
+        BufferedImage image = null;
+        try (ImageInputStream input = ImageIO.createImageInputStream(file)) {
+            Iterator<ImageReader> readers = input == null ? null : ImageIO.getImageReaders(input);
+            if (readers == null || !readers.hasNext()) {
+                return null;
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(input, true, true);
+                sourceWidth = reader.getWidth(0);
+                sourceHeight = reader.getHeight(0);
+                if (edge > 0) {
+                    ImageReadParam param = reader.getDefaultReadParam();
+                    // decode at roughly 4x the target; the final draw smooths the rest
+                    int step = Math.max(1, Math.max(sourceWidth, sourceHeight) / (edge * 4));
+                    param.setSourceSubsampling(step, step, 0, 0);
+                    image = reader.read(0, param);
+                }
+            } finally {
+                reader.dispose();
+            }
+        }
+
+        int orientation = exifOrientation(file);
+        boolean sideways = orientation >= 5 && orientation <= 8;
+        int width = sideways ? sourceHeight : sourceWidth;
+        int height = sideways ? sourceWidth : sourceHeight;
+
+        if (image == null) {
+            return new Probe(width, height, null);
+        }
+
+        double scale = Math.min(1.0, (double) edge / Math.max(image.getWidth(), image.getHeight()));
+        BufferedImage small = draw(
+                image,
+                Math.max(1, (int) Math.round(image.getWidth() * scale)),
+                Math.max(1, (int) Math.round(image.getHeight() * scale)));
+
+        return new Probe(width, height, encodeJpeg(orient(small, orientation), quality));
+    }
+
+    /**
+     * Upright pixel dimensions from just the first bytes of an image, for
+     * uploads that are streamed through rather than stored. Never yields a
+     * placeholder.
+     *
+     * @return the probe, or {@code null} when ImageIO cannot read the format
+     * or {@code head} stops before the dimensions
+     */
+    public static Probe probeHead(byte[] head) throws IOException {
+        int sourceWidth;
+        int sourceHeight;
+        try (ImageInputStream input = ImageIO.createImageInputStream(new ByteArrayInputStream(head))) {
+            Iterator<ImageReader> readers = input == null ? null : ImageIO.getImageReaders(input);
+            if (readers == null || !readers.hasNext()) {
+                return null;
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(input, true, true);
+                sourceWidth = reader.getWidth(0);
+                sourceHeight = reader.getHeight(0);
+            } catch (IOException e) {
+                return null;
+            } finally {
+                reader.dispose();
+            }
+        }
+
+        int orientation = exifOrientation(new ByteArrayInputStream(head));
+        boolean sideways = orientation >= 5 && orientation <= 8;
+        return new Probe(
+                sideways ? sourceHeight : sourceWidth,
+                sideways ? sourceWidth : sourceHeight,
+                null);
+    }
+
+    /**
+     * @param placeholder tiny JPEG, or {@code null} when none was asked for
+     */
+    public record Probe(int width, int height, byte[] placeholder) {
+    }
+
+    /**
+     * Re-encodes {@code file} as a JPEG no larger than {@code longEdge} on its
+     * longest side, for storing instead of the original. A JPEG source keeps
+     * its EXIF segment byte for byte (capture date, camera, GPS and the
+     * orientation tag, which still applies since pixels are not rotated).
+     *
+     * @return the JPEG bytes, or {@code null} when ImageIO cannot read the
+     * file or the result would not be smaller than the original
+     */
+    public static byte[] shrink(File file, int longEdge, float quality) throws IOException {
+        BufferedImage image;
+        try (ImageInputStream input = ImageIO.createImageInputStream(file)) {
+            Iterator<ImageReader> readers = input == null ? null : ImageIO.getImageReaders(input);
+            if (readers == null || !readers.hasNext()) {
+                return null;
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(input, true, true);
+                int sourceEdge = Math.max(reader.getWidth(0), reader.getHeight(0));
+                ImageReadParam param = reader.getDefaultReadParam();
+                // subsample down to no less than 2x the target; halving steps finish the job
+                int step = Math.max(1, sourceEdge / (longEdge * 2));
+                param.setSourceSubsampling(step, step, 0, 0);
+                image = reader.read(0, param);
+            } finally {
+                reader.dispose();
+            }
+        }
+
+        double scale = Math.min(1.0, (double) longEdge / Math.max(image.getWidth(), image.getHeight()));
+        BufferedImage small = downscale(
+                toRgb(image),
+                Math.max(1, (int) Math.round(image.getWidth() * scale)),
+                Math.max(1, (int) Math.round(image.getHeight() * scale)));
+
+        byte[] jpeg = withExif(encodeJpeg(small, quality), exifSegments(file));
+        return jpeg.length < file.length() ? jpeg : null;
+    }
+
+    static BufferedImage scale(BufferedImage image, ResizeSpec spec) {
+        int sourceWidth = image.getWidth();
+        int sourceHeight = image.getHeight();
+
+        double scaleX = spec.width > 0 ? (double) spec.width / sourceWidth : Double.MAX_VALUE;
+        double scaleY = spec.height > 0 ? (double) spec.height / sourceHeight : Double.MAX_VALUE;
+
+        // Crop the source to the target aspect first, then scale the crop.
+        int cropX = 0;
+        int cropY = 0;
+        int cropWidth = sourceWidth;
+        int cropHeight = sourceHeight;
+        double scale;
+
+        if (spec.fit == ResizeSpec.Fit.COVER) {
+            scale = Math.max(scaleX, scaleY);
+            double targetAspect = (double) spec.width / spec.height;
+            if ((double) sourceWidth / sourceHeight > targetAspect) {
+                cropWidth = (int) Math.round(sourceHeight * targetAspect);
+                cropX = (sourceWidth - cropWidth) / 2;
+            } else {
+                cropHeight = (int) Math.round(sourceWidth / targetAspect);
+                cropY = (sourceHeight - cropHeight) / 2;
+            }
+        } else {
+            scale = Math.min(scaleX, scaleY);
+        }
+
+        // Never upscale: a rendition larger than its source only costs bytes.
+        scale = Math.min(1.0, scale);
+        int targetWidth = Math.max(1, (int) Math.round(cropWidth * scale));
+        int targetHeight = Math.max(1, (int) Math.round(cropHeight * scale));
+
+        return downscale(
+                toRgb(image.getSubimage(cropX, cropY, cropWidth, cropHeight)),
+                targetWidth,
+                targetHeight);
+    }
+
+    private static BufferedImage downscale(BufferedImage current, int targetWidth, int targetHeight) {
+        // Halve step by step; a single bilinear pass aliases badly past 2x.
+        int width = current.getWidth();
+        int height = current.getHeight();
+        while (width / 2 >= targetWidth && height / 2 >= targetHeight) {
+            width /= 2;
+            height /= 2;
+            current = draw(current, width, height);
+        }
+        if (width != targetWidth || height != targetHeight) {
+            current = draw(current, targetWidth, targetHeight);
+        }
+        return current;
+    }
+
+    public static byte[] encodeJpeg(BufferedImage image, float quality) throws IOException {
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        try (ImageOutputStream stream = ImageIO.createImageOutputStream(out)) {
+            writer.setOutput(stream);
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality(quality);
+            param.setProgressiveMode(ImageWriteParam.MODE_DEFAULT);
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Rotates an image as its EXIF orientation asks. Mirrored orientations
+     * are treated as their plain rotation, which is close enough for
+     * placeholders.
+     */
+    private static BufferedImage orient(BufferedImage image, int orientation) {
+        int quarterTurns = switch (orientation) {
+            case 3, 4 -> 2;
+            case 5, 6 -> 1;
+            case 7, 8 -> 3;
+            default -> 0;
+        };
+        if (quarterTurns == 0) {
+            return image;
+        }
+
+        int width = image.getWidth();
+        int height = image.getHeight();
+        boolean swap = quarterTurns % 2 == 1;
+        BufferedImage target = new BufferedImage(
+                swap ? height : width, swap ? width : height, BufferedImage.TYPE_INT_RGB);
+
+        AffineTransform transform = new AffineTransform();
+        transform.translate(target.getWidth() / 2.0, target.getHeight() / 2.0);
+        transform.quadrantRotate(quarterTurns);
+        transform.translate(-width / 2.0, -height / 2.0);
+
+        Graphics2D g = target.createGraphics();
+        try {
+            g.drawImage(image, transform, null);
+        } finally {
+            g.dispose();
+        }
+        return target;
+    }
+
+    /**
+     * The EXIF orientation tag of a JPEG, or 1 (upright) when there is none.
+     */
+    static int exifOrientation(File file) throws IOException {
+        try (InputStream in = new FileInputStream(file)) {
+            return exifOrientation(in);
+        }
+    }
+
+    private static int exifOrientation(InputStream source) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(source))) {
+            if (in.readUnsignedShort() != 0xFFD8) {
+                return 1;
+            }
+            while (true) {
+                int marker = in.readUnsignedShort();
+                int length = in.readUnsignedShort() - 2;
+                if ((marker & 0xFF00) != 0xFF00 || marker == 0xFFDA || length < 0) {
+                    return 1;
+                }
+                if (marker != 0xFFE1) {
+                    in.skipNBytes(length);
+                    continue;
+                }
+                byte[] app1 = new byte[length];
+                in.readFully(app1);
+                int orientation = orientationOf(app1);
+                if (orientation > 0) {
+                    return orientation;
+                }
+            }
+        } catch (EOFException e) {
+            return 1;
+        }
+    }
+
+    /**
+     * Every APP1 segment of a JPEG (EXIF, XMP), marker and length included;
+     * empty for anything else.
+     */
+    private static byte[] exifSegments(File file) throws IOException {
+        ByteArrayOutputStream segments = new ByteArrayOutputStream();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readUnsignedShort() != 0xFFD8) {
+                return segments.toByteArray();
+            }
+            while (true) {
+                int marker = in.readUnsignedShort();
+                int length = in.readUnsignedShort();
+                if ((marker & 0xFF00) != 0xFF00 || marker == 0xFFDA || length < 2) {
+                    break;
+                }
+                byte[] body = new byte[length - 2];
+                in.readFully(body);
+                if (marker == 0xFFE1) {
+                    segments.write(marker >> 8);
+                    segments.write(marker);
+                    segments.write(length >> 8);
+                    segments.write(length);
+                    segments.write(body);
+                }
+            }
+        } catch (EOFException e) {
+            // truncated header: keep whatever was complete
+        }
+        return segments.toByteArray();
+    }
+
+    /**
+     * Puts {@code segments} right after SOI, where EXIF readers expect it,
+     * dropping the encoder's JFIF APP0 that would otherwise precede it.
+     */
+    private static byte[] withExif(byte[] jpeg, byte[] segments) {
+        if (segments.length == 0) {
+            return jpeg;
+        }
+        int rest = 2;
+        if ((jpeg[2] & 0xFF) == 0xFF && (jpeg[3] & 0xFF) == 0xE0) {
+            rest = 4 + (((jpeg[4] & 0xFF) << 8) | (jpeg[5] & 0xFF));
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream(jpeg.length + segments.length);
+        out.write(jpeg, 0, 2);
+        out.write(segments, 0, segments.length);
+        out.write(jpeg, rest, jpeg.length - rest);
+        return out.toByteArray();
+    }
+
+    private static int orientationOf(byte[] app1) {
+        // "Exif\0\0", then a TIFF header whose byte order applies to everything after it
+        if (app1.length < 14 || app1[0] != 'E' || app1[1] != 'x' || app1[2] != 'i' || app1[3] != 'f') {
+            return 0;
+        }
+        int tiff = 6;
+        boolean little = app1[tiff] == 'I';
+        int ifd = tiff + readInt(app1, tiff + 4, little);
+        if (ifd + 2 > app1.length) {
+            return 0;
+        }
+        int entries = readShort(app1, ifd, little);
+        for (int i = 0; i < entries; i++) {
+            int entry = ifd + 2 + i * 12;
+            if (entry + 12 > app1.length) {
+                return 0;
+            }
+            if (readShort(app1, entry, little) == 0x0112) {
+                return readShort(app1, entry + 8, little);
+            }
+        }
+        return 0;
+    }
+
+    private static int readShort(byte[] bytes, int offset, boolean little) {
+        int a = bytes[offset] & 0xFF;
+        int b = bytes[offset + 1] & 0xFF;
+        return little ? (b << 8) | a : (a << 8) | b;
+    }
+
+    private static int readInt(byte[] bytes, int offset, boolean little) {
+        int high = readShort(bytes, little ? offset + 2 : offset, little);
+        int low = readShort(bytes, little ? offset : offset + 2, little);
+        return (high << 16) | low;
+    }
+
+    private static BufferedImage toRgb(BufferedImage image) {
+        if (image.getType() == BufferedImage.TYPE_INT_RGB) {
+            return image;
+        }
+        return draw(image, image.getWidth(), image.getHeight());
+    }
+
+    private static BufferedImage draw(BufferedImage source, int width, int height) {
+        BufferedImage target = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = target.createGraphics();
+        try {
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            g.setColor(Color.WHITE);
+            g.fillRect(0, 0, width, height);
+            g.drawImage(source, 0, 0, width, height, null);
+        } finally {
+            g.dispose();
+        }
+        return target;
+    }
+}
@@ -0,0 +1,300 @@
+package com.thisday.media;
+
+import com.thisday.immich.ImmichClient;
+import com.thisday.immich.ImmichTransport.Dispatch;
+import com.thisday.immich.ImmichTransport.Priority;
+import io.vertx.core.Future;
+import io.vertx.core.Promise;
+import io.vertx.core.http.HttpClientResponse;
+import io.vertx.core.json.JsonObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Caches video originals as fixed-size, block-aligned slices so that Range
+ * requests (seeking, resuming playback) are assembled from local blocks and
+ * only missing blocks are fetched from Immich.
+ * <p>
+ * When an asset is read sequentially the next blocks are fetched ahead of
+ * the reader. Blocks are stored in their own {@link MediaDiskCache}; each
+ * block entry also records the asset's total length and content type so the
+ * asset can be described again after a restart.
+ */
+public class MediaBlockCache {
+
+    private static final Logger log =
+            LoggerFactory.getLogger(MediaBlockCache.class);
+
+    private static final int MAX_TRACKED_ASSETS = 10_000;
+
+    private final ImmichClient immichClient;
+    private final MediaDiskCache blocks;
+    private final long blockSize;
+    private final int readAhead;
+
+    private final Map<String, AssetInfo> assets = new LinkedHashMap<>(256, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, AssetInfo> eldest) {
+            return size() > MAX_TRACKED_ASSETS;
+        }
+    };
+    private final ConcurrentHashMap<String, Future<MediaCacheEntry>> inFlight = new ConcurrentHashMap<>();
+
+    private long blockHits;
+    private long blockFetches;
+    private long readAheadFetches;
+
+    public MediaBlockCache(
+            ImmichClient immichClient,
+            MediaDiskCache blocks,
+            long blockSize,
+            int readAhead
+    ) {
+        this.immichClient = immichClient;
+        this.blocks = blocks;
+        this.blockSize = blockSize;
+        this.readAhead = readAhead;
+    }
+
+    public Future<Void> open() {
+        return blocks.open();
+    }
+
+    public long blockSize() {
+        return blockSize;
+    }
+
+    public String pathOf(MediaCacheEntry block) {
+        return blocks.pathOf(block);
+    }
+
+    /**
+     * Resolves the asset's total length and headers, fetching the block that
+     * contains {@code startHint} if nothing is known about the asset yet.
+     */
+    public Future<AssetInfo> describe(String assetId, long startHint, Dispatch dispatch) {
+        AssetInfo info = knownInfo(assetId, Math.max(0, startHint) / blockSize);
+        if (info != null) {
+            return Future.succeededFuture(info);
+        }
+        if (startHint < 0) {
+            return Future.failedFuture("Unknown length for suffix range on " + assetId);
+        }
+
+        return block(assetId, startHint / blockSize, dispatch).compose(entry -> {
+            AssetInfo fetched = knownInfo(assetId, startHint / blockSize);
+            return fetched != null
+                    ? Future.succeededFuture(fetched)
+                    : Future.failedFuture("Immich did not report a length for " + assetId);
+        });
+    }
+
+    /**
+     * Returns the cached block {@code index}, fetching it if needed. Reading
+     * the block right after its predecessor triggers read-ahead, which is
+     * queued as background work for the same tenant.
+     */
+    public Future<MediaCacheEntry> block(String assetId, long index, Dispatch dispatch) {
+        AssetInfo info;
+        synchronized (this) {
+            info = assets.get(assetId);
+        }
+
+        if (info != null) {
+            boolean sequential = index == info.lastBlock + 1;
+            info.lastBlock = index;
+            if (sequential) {
+                prefetch(assetId, info, index, new Dispatch(Priority.BACKGROUND, dispatch.tenant()));
+            }
+        }
+
+        MediaCacheEntry cached = blocks.lookup(blockKey(assetId, index));
+        if (cached != null) {
+            synchronized (this) {
+                blockHits++;
+            }
+            return Future.succeededFuture(cached);
+        }
+        return fetch(assetId, index, false, dispatch);
+    }
+
+    public synchronized JsonObject stats() {
+        return blocks.stats()
+                .put("blockSize", blockSize)
+                .put("blockHits", blockHits)
+                .put("blockFetches", blockFetches)
+                .put("readAheadFetches", readAheadFetches);
+    }
+
+    /*
+     * ============================================================
+     * Fetching
+     * ============================================================
+     */
+    private void prefetch(String assetId, AssetInfo info, long index, Dispatch dispatch) {
+        long lastIndex = (info.totalLength - 1) / blockSize;
+        for (long next = index + 1; next <= Math.min(lastIndex, index + readAhead); next++) {
+            if (!blocks.contains(blockKey(assetId, next))) {
+                fetch(assetId, next, true, dispatch);
+            }
+        }
+    }
+
+    private Future<MediaCacheEntry> fetch(String assetId, long index, boolean readAheadFetch, Dispatch dispatch) {
+        String key = blockKey(assetId, index);
+
+        Promise<MediaCacheEntry> promise = Promise.promise();
+        Future<MediaCacheEntry> existing = inFlight.putIfAbsent(key, promise.future());
+        if (existing != null) {
+            return existing;
+        }
+
+        synchronized (this) {
+            if (readAheadFetch) {
+                readAheadFetches++;
+            } else {
+                blockFetches++;
+            }
+        }
+
+        long start = index * blockSize;
+        long end = start + blockSize - 1;
+
+        immichClient.openOriginalRange(assetId, start, end, dispatch)
+                .compose(resp -> store(assetId, index, key, resp))
+                .onComplete(ar -> {
+                    inFlight.remove(key);
+                    if (ar.failed()) {
+                        log.warn("Block fetch failed [assetId={}, block={}]", assetId, index, ar.cause());
+                    }
+                    promise.handle(ar);
+                });
+
+        return promise.future();
+    }
+
+    private Future<MediaCacheEntry> store(
+            String assetId,
+            long index,
+            String key,
+            HttpClientResponse resp
+    ) {
+        long length = parseLong(resp.getHeader("Content-Length"));
+        long total = resp.statusCode() == 206
+                ? parseTotal(resp.getHeader("Content-Range"))
+                : length;
+
+        // A 200 is only usable when the whole original fits in this block.
+        if (length < 0 || total < 0 || (resp.statusCode() == 200 && (index > 0 || total > blockSize))) {
+            resp.request().reset();
+            return Future.failedFuture("Immich ignored block range for " + assetId);
+        }
+
+        AssetInfo info = remember(
+                assetId,
+                total,
+                resp.getHeader("Content-Type"),
+                resp.getHeader("ETag"),
+                resp.getHeader("Last-Modified")
+        );
+
+        MediaCacheEntry template = new MediaCacheEntry();
+        template.key = key;
+        template.contentType = info.contentType;
+        template.etag = info.etag;
+        template.lastModified = info.lastModified;
+        template.totalLength = total;
+
+        return blocks.openWriter(template, length)
+                .recover(err -> {
+                    resp.request().reset();
+                    return Future.failedFuture(err);
+                })
+                .compose(writer -> resp.pipeTo(writer)
+                        .onFailure(err -> writer.abort())
+                        .map(v -> writer.entry()));
+    }
+
+    /*
+     * ============================================================
+     * Asset descriptions
+     * ============================================================
+     */
+    private AssetInfo knownInfo(String assetId, long anyBlock) {
+        synchronized (this) {
+            AssetInfo info = assets.get(assetId);
+            if (info != null) {
+                return info;
+            }
+        }
+
+        // After a restart only the block entries know the asset's shape.
+        MediaCacheEntry block = blocks.peek(blockKey(assetId, anyBlock));
+        if (block == null) {
+            block = blocks.peek(blockKey(assetId, 0));
+        }
+        if (block == null || block.totalLength < 0) {
+            return null;
+        }
+        return remember(assetId, block.totalLength, block.contentType, block.etag, block.lastModified);
+    }
+
+    private synchronized AssetInfo remember(
+            String assetId,
+            long totalLength,
+            String contentType,
+            String etag,
+            String lastModified
+    ) {
+        AssetInfo info = assets.get(assetId);
+        if (info == null || info.totalLength != totalLength) {
+            info = new AssetInfo(totalLength, contentType, etag, lastModified);
+            assets.put(assetId, info);
+        }
+        return info;
+    }
+
+    private String blockKey(String assetId, long index) {
+        // the block size is part of the key so resizing never mixes layouts
+        return assetId + ":full:b" + blockSize + ":" + index;
+    }
+
+    private static long parseTotal(String contentRange) {
+        if (contentRange == null) {
+            return -1;
+        }
+        int slash = contentRange.lastIndexOf('/');
+        return slash < 0 ? -1 : parseLong(contentRange.substring(slash + 1));
+    }
+
+    private static long parseLong(String value) {
+        if (value == null) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    public static final class AssetInfo {
+
+        public final long totalLength;
+        public final String contentType;
+        public final String etag;
+        public final String lastModified;
+        volatile long lastBlock = -2;
+
+        AssetInfo(long totalLength, String contentType, String etag, String lastModified) {
+            this.totalLength = totalLength;
+            this.contentType = contentType;
+            this.etag = etag;
+            this.lastModified = lastModified;
+        }
+    }
+}
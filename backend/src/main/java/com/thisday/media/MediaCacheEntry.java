@@ -0,0 +1,59 @@
+package com.thisday.media;
+
+import io.vertx.core.json.JsonObject;
+
+public class MediaCacheEntry {
+
+    public String key;
+    public String file;
+    public String contentType;
+    public long length;
+    // length of the whole representation when this entry is one block of it
+    public long totalLength = -1;
+    public String etag;
+    public String lastModified;
+    public long hits;
+    public long createdAt;
+
+    // ---------- Index → Model ----------
+    public static MediaCacheEntry from(JsonObject json) {
+        MediaCacheEntry entry = new MediaCacheEntry();
+
+        entry.key = json.getString("key");
+        entry.file = json.getString("file");
+        entry.contentType = json.getString("contentType");
+        entry.length = json.getLong("length", 0L);
+        entry.totalLength = json.getLong("totalLength", -1L);
+        entry.etag = json.getString("etag");
+        entry.lastModified = json.getString("lastModified");
+        entry.hits = json.getLong("hits", 0L);
+        entry.createdAt = json.getLong("createdAt", 0L);
+
+        return entry;
+    }
+
+    // ---------- Model → Index ----------
+    public JsonObject toJson() {
+        JsonObject json = new JsonObject()
+                .put("key", key)
+                .put("file", file)
+                .put("length", length)
+                .put("hits", hits)
+                .put("createdAt", createdAt);
+
+        if (totalLength >= 0) {
+            json.put("totalLength", totalLength);
+        }
+        if (contentType != null) {
+            json.put("contentType", contentType);
+        }
+        if (etag != null) {
+            json.put("etag", etag);
+        }
+        if (lastModified != null) {
+            json.put("lastModified", lastModified);
+        }
+
+        return json;
+    }
+}
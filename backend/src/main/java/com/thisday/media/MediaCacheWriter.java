@@ -0,0 +1,134 @@
+package com.thisday.media;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.file.AsyncFile;
+import io.vertx.core.streams.WriteStream;
+
+/**
+ * Write side of a cache fill. Bytes go to a temp file; {@link #end()} only
+ * publishes the entry if exactly the expected number of bytes arrived,
+ * otherwise the temp file is discarded.
+ */
+public class MediaCacheWriter implements WriteStream<Buffer> {
+
+    private final MediaDiskCache cache;
+    private final AsyncFile file;
+    private final String tempPath;
+    private final MediaCacheEntry entry;
+    private final long expectedLength;
+    private long written;
+    private boolean done;
+
+    MediaCacheWriter(
+            MediaDiskCache cache,
+            AsyncFile file,
+            String tempPath,
+            MediaCacheEntry entry,
+            long expectedLength
+    ) {
+        this.cache = cache;
+        this.file = file;
+        this.tempPath = tempPath;
+        this.entry = entry;
+        this.expectedLength = expectedLength;
+    }
+
+    public MediaCacheEntry entry() {
+        return entry;
+    }
+
+    @Override
+    public MediaCacheWriter exceptionHandler(Handler<Throwable> handler) {
+        file.exceptionHandler(handler);
+        return this;
+    }
+
+    @Override
+    public Future<Void> write(Buffer data) {
+        synchronized (this) {
+            written += data.length();
+            if (cache.maxEntryBytes() > 0 && written > cache.maxEntryBytes()) {
+                return Future.failedFuture("Cache entry exceeds max size");
+            }
+        }
+        return file.write(data);
+    }
+
+    @Override
+    public void write(Buffer data, Handler<AsyncResult<Void>> handler) {
+        Future<Void> fut = write(data);
+        if (handler != null) {
+            fut.onComplete(handler);
+        }
+    }
+
+    /**
+     * Closes the temp file and atomically moves it into the cache.
+     */
+    @Override
+    public Future<Void> end() {
+        synchronized (this) {
+            if (done) {
+                return Future.succeededFuture();
+            }
+            done = true;
+        }
+
+        if (expectedLength >= 0 && written != expectedLength) {
+            return discard().compose(v -> Future.failedFuture(
+                    "Incomplete cache fill for " + entry.key + ": " + written + "/" + expectedLength));
+        }
+
+        entry.length = written;
+        return file.close()
+                .compose(v -> cache.publish(tempPath, entry))
+                .onFailure(err -> cache.deleteQuietly(tempPath));
+    }
+
+    @Override
+    public void end(Handler<AsyncResult<Void>> handler) {
+        Future<Void> fut = end();
+        if (handler != null) {
+            fut.onComplete(handler);
+        }
+    }
+
+    /**
+     * Drops a partial fill, e.g. when the upstream stream failed.
+     */
+    public Future<Void> abort() {
+        synchronized (this) {
+            if (done) {
+                return Future.succeededFuture();
+            }
+            done = true;
+        }
+        return discard();
+    }
+
+    private Future<Void> discard() {
+        return file.close()
+                .recover(err -> Future.succeededFuture())
+                .onComplete(v -> cache.deleteQuietly(tempPath));
+    }
+
+    @Override
+    public MediaCacheWriter setWriteQueueMaxSize(int maxSize) {
+        file.setWriteQueueMaxSize(maxSize);
+        return this;
+    }
+
+    @Override
+    public boolean writeQueueFull() {
+        return file.writeQueueFull();
+    }
+
+    @Override
+    public MediaCacheWriter drainHandler(Handler<Void> handler) {
+        file.drainHandler(handler);
+        return this;
+    }
+}
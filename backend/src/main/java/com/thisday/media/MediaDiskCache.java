@@ -0,0 +1,375 @@
+package com.thisday.media;
+
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import io.vertx.core.file.OpenOptions;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.stream.Stream;
+
+/**
+ * Content-addressed on-disk cache for media bytes.
+ * <p>
+ * Entries live under {@code data/<2 hex>/<sha256(key)>.<fill id>} and are
+ * filled through temp files that are atomically moved into place, so a
+ * reader never sees a partial file. Every fill gets its own file, so deleting
+ * an evicted or replaced entry can never remove a newer fill of the same key;
+ * the delete is also held back briefly for readers that already hold the old
+ * path. The LRU order and entry metadata are kept in memory and
+ * flushed to {@code index.json} periodically; on startup the index is
+ * reconciled against the data directory and anything unknown is deleted.
+ * <p>
+ * All bookkeeping is synchronized: the cache is shared by every event loop
+ * serving media.
+ */
+public class MediaDiskCache {
+
+    private static final Logger log =
+            LoggerFactory.getLogger(MediaDiskCache.class);
+
+    private static final String INDEX_FILE = "index.json";
+    private static final long INDEX_FLUSH_INTERVAL_MS = 30_000;
+    // how long a retired file outlives its index entry, for readers mid-open
+    private static final long RETIRED_FILE_GRACE_MS = 10_000;
+
+    private final Vertx vertx;
+    private final Path root;
+    private final Path dataDir;
+    private final Path tmpDir;
+    private final long maxBytes;
+    private final long maxEntryBytes;
+
+    // access-ordered: eldest entry is the least recently used
+    private final LinkedHashMap<String, MediaCacheEntry> entries =
+            new LinkedHashMap<>(256, 0.75f, true);
+
+    private long totalBytes;
+    private boolean ready;
+    private boolean dirty;
+
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    public MediaDiskCache(Vertx vertx, String directory, long maxBytes, long maxEntryBytes) {
+        this.vertx = vertx;
+        this.root = Paths.get(directory).toAbsolutePath();
+        this.dataDir = root.resolve("data");
+        this.tmpDir = root.resolve("tmp");
+        this.maxBytes = maxBytes;
+        this.maxEntryBytes = maxEntryBytes;
+    }
+
+    /**
+     * Loads the persisted index and starts the periodic index flush. Until
+     * this completes every lookup is a miss and no fills are accepted.
+     */
+    public Future<Void> open() {
+        return vertx.<Void>executeBlocking(() -> {
+                    Files.createDirectories(dataDir);
+                    Files.createDirectories(tmpDir);
+                    clearDirectory(tmpDir);
+                    loadIndex();
+                    return null;
+                })
+                .onSuccess(v -> {
+                    vertx.setPeriodic(INDEX_FLUSH_INTERVAL_MS, id -> flush());
+                    log.info(
+                            "Media disk cache ready [dir={}, entries={}, bytes={}, maxBytes={}]",
+                            root, size(), usedBytes(), maxBytes
+                    );
+                })
+                .onFailure(err -> log.error("Failed to open media disk cache [dir={}]", root, err));
+    }
+
+    public long maxEntryBytes() {
+        return maxEntryBytes;
+    }
+
+    /**
+     * Returns the entry for {@code key} and marks it most recently used.
+     */
+    public synchronized MediaCacheEntry lookup(String key) {
+        MediaCacheEntry entry = ready ? entries.get(key) : null;
+        if (entry == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+        entry.hits++;
+        dirty = true;
+        return entry;
+    }
+
+    /**
+     * Returns the entry's metadata without counting it as a hit.
+     */
+    public synchronized MediaCacheEntry peek(String key) {
+        return ready ? entries.get(key) : null;
+    }
+
+    public synchronized boolean contains(String key) {
+        return ready && entries.containsKey(key);
+    }
+
+    public String pathOf(MediaCacheEntry entry) {
+        return dataDir.resolve(entry.file).toString();
+    }
+
+    /**
+     * Path of the entry's file relative to the cache directory, with forward
+     * slashes, for a proxy that serves the directory itself.
+     */
+    public String relativePathOf(MediaCacheEntry entry) {
+        return root.relativize(dataDir.resolve(entry.file)).toString().replace('\\', '/');
+    }
+
+    /**
+     * Starts a fill for {@code key}. The returned writer publishes the entry
+     * once {@code expectedLength} bytes (or any amount when negative) have
+     * been written and it is ended.
+     */
+    public Future<MediaCacheWriter> openWriter(
+            String key,
+            String contentType,
+            String etag,
+            String lastModified,
+            long expectedLength
+    ) {
+        MediaCacheEntry template = new MediaCacheEntry();
+        template.key = key;
+        template.contentType = contentType;
+        template.etag = etag;
+        template.lastModified = lastModified;
+        return openWriter(template, expectedLength);
+    }
+
+    /**
+     * Like {@link #openWriter(String, String, String, String, long)} with the
+     * entry metadata supplied by the caller.
+     */
+    public Future<MediaCacheWriter> openWriter(MediaCacheEntry template, long expectedLength) {
+        synchronized (this) {
+            if (!ready) {
+                return Future.failedFuture("Media disk cache not ready");
+            }
+        }
+        if (expectedLength > maxEntryBytes) {
+            return Future.failedFuture("Media too large to cache: " + expectedLength);
+        }
+
+        String fillId = UUID.randomUUID().toString();
+        template.file = fileNameFor(template.key) + "." + fillId;
+        String tempPath = tmpDir.resolve(fillId + ".part").toString();
+
+        return vertx.fileSystem()
+                .open(tempPath, new OpenOptions().setWrite(true).setCreateNew(true))
+                .map(file -> new MediaCacheWriter(this, file, tempPath, template, expectedLength));
+    }
+
+    Future<Void> publish(String tempPath, MediaCacheEntry entry) {
+        Path target = dataDir.resolve(entry.file);
+
+        return vertx.<Void>executeBlocking(() -> {
+            Files.createDirectories(target.getParent());
+            Files.move(Paths.get(tempPath), target, StandardCopyOption.ATOMIC_MOVE);
+            return null;
+        }).onSuccess(v -> {
+            entry.createdAt = System.currentTimeMillis();
+            insert(entry);
+            log.debug("Media cached [key={}, bytes={}]", entry.key, entry.length);
+        });
+    }
+
+    public void invalidate(String key) {
+        MediaCacheEntry removed;
+        synchronized (this) {
+            removed = entries.remove(key);
+            if (removed == null) {
+                return;
+            }
+            totalBytes -= removed.length;
+            dirty = true;
+        }
+        retire(removed);
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized long usedBytes() {
+        return totalBytes;
+    }
+
+    public synchronized JsonObject stats() {
+        return new JsonObject()
+                .put("entries", entries.size())
+                .put("bytes", totalBytes)
+                .put("maxBytes", maxBytes)
+                .put("hits", hits)
+                .put("misses", misses)
+                .put("evictions", evictions);
+    }
+
+    /**
+     * Persists the index if it changed since the last flush.
+     */
+    public Future<Void> flush() {
+        JsonObject snapshot;
+        synchronized (this) {
+            if (!ready || !dirty) {
+                return Future.succeededFuture();
+            }
+            dirty = false;
+            JsonArray list = new JsonArray();
+            entries.values().forEach(entry -> list.add(entry.toJson()));
+            snapshot = new JsonObject()
+                    .put("version", 1)
+                    .put("entries", list);
+        }
+
+        return vertx.<Void>executeBlocking(() -> {
+            Path tmp = root.resolve(INDEX_FILE + ".tmp");
+            Files.writeString(tmp, snapshot.encode(), StandardCharsets.UTF_8);
+            Files.move(
+                    tmp,
+                    root.resolve(INDEX_FILE),
+                    StandardCopyOption.ATOMIC_MOVE,
+                    StandardCopyOption.REPLACE_EXISTING
+            );
+            return null;
+        }).onFailure(err -> {
+            synchronized (this) {
+                dirty = true;
+            }
+            log.warn("Failed to flush media cache index", err);
+        });
+    }
+
+    /**
+     * Deletes a file that has left the index once readers that looked it up
+     * just before have had time to open it.
+     */
+    private void retire(MediaCacheEntry entry) {
+        String path = pathOf(entry);
+        vertx.setTimer(RETIRED_FILE_GRACE_MS, id -> deleteQuietly(path));
+    }
+
+    void deleteQuietly(String path) {
+        vertx.fileSystem().delete(path).onFailure(err ->
+                log.debug("Failed to delete cache file [path={}]", path, err));
+    }
+
+    private void insert(MediaCacheEntry entry) {
+        List<MediaCacheEntry> evicted = new ArrayList<>();
+        MediaCacheEntry previous;
+
+        synchronized (this) {
+            previous = entries.put(entry.key, entry);
+            if (previous != null) {
+                totalBytes -= previous.length;
+            }
+            totalBytes += entry.length;
+            dirty = true;
+
+            Iterator<MediaCacheEntry> it = entries.values().iterator();
+            while (totalBytes > maxBytes && it.hasNext()) {
+                MediaCacheEntry eldest = it.next();
+                if (eldest == entry) {
+                    continue;
+                }
+                it.remove();
+                totalBytes -= eldest.length;
+                evictions++;
+                evicted.add(eldest);
+            }
+        }
+
+        if (previous != null) {
+            retire(previous);
+        }
+        for (MediaCacheEntry eldest : evicted) {
+            log.debug("Evicting cached media [key={}, bytes={}]", eldest.key, eldest.length);
+            retire(eldest);
+        }
+    }
+
+    private void loadIndex() throws IOException {
+        Map<String, MediaCacheEntry> loaded = new LinkedHashMap<>();
+        Path indexPath = root.resolve(INDEX_FILE);
+
+        if (Files.exists(indexPath)) {
+            try {
+                JsonObject index = new JsonObject(Files.readString(indexPath, StandardCharsets.UTF_8));
+                for (Object value : index.getJsonArray("entries", new JsonArray())) {
+                    if (value instanceof JsonObject json) {
+                        MediaCacheEntry entry = MediaCacheEntry.from(json);
+                        Path file = dataDir.resolve(entry.file);
+                        if (Files.isRegularFile(file) && Files.size(file) == entry.length) {
+                            loaded.put(entry.file, entry);
+                        }
+                    }
+                }
+            } catch (Exception e) {
+                log.warn("Media cache index unreadable, starting empty", e);
+                loaded.clear();
+            }
+        }
+
+        // Files without a valid index record have no metadata to serve them with.
+        int orphans = 0;
+        try (Stream<Path> files = Files.walk(dataDir)) {
+            for (Path file : files.filter(Files::isRegularFile).toList()) {
+                String relative = dataDir.relativize(file).toString();
+                if (!loaded.containsKey(relative)) {
+                    Files.deleteIfExists(file);
+                    orphans++;
+                }
+            }
+        }
+
+        synchronized (this) {
+            entries.clear();
+            totalBytes = 0;
+            for (MediaCacheEntry entry : loaded.values()) {
+                entries.put(entry.key, entry);
+                totalBytes += entry.length;
+            }
+            ready = true;
+            dirty = orphans > 0;
+        }
+
+        if (orphans > 0) {
+            log.info("Removed {} orphaned media cache files", orphans);
+        }
+    }
+
+    private static void clearDirectory(Path dir) throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            for (Path file : files.toList()) {
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+
+    private static String fileNameFor(String key) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256")
+                    .digest(key.getBytes(StandardCharsets.UTF_8));
+            String hex = HexFormat.of().formatHex(digest);
+            return hex.substring(0, 2) + "/" + hex;
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,288 @@
+package com.thisday.media;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.JsonObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+/**
+ * Byte-weighted in-memory tier for small media variants using W-TinyLFU.
+ * <p>
+ * New entries land in a small LRU window. Entries leaving the window only
+ * enter the main segmented LRU (probation + protected) if the frequency
+ * sketch says they are more popular than the main-space victims they would
+ * displace, so a one-off scan through old months cannot flush the working set.
+ * <p>
+ * Bytes are held in pooled direct buffers. Each entry is reference counted:
+ * the cache holds one reference and every reader retains one until its
+ * response has been written, so eviction never frees memory still in flight.
+ */
+public class MediaMemoryCache {
+
+    private static final Logger log =
+            LoggerFactory.getLogger(MediaMemoryCache.class);
+
+    private static final int ASSUMED_AVERAGE_ENTRY_BYTES = 32 * 1024;
+
+    private final long maxBytes;
+    private final long maxEntryBytes;
+    private final long windowMax;
+    private final long protectedMax;
+    private final long mainMax;
+
+    private final LinkedHashMap<String, Entry> window = new LinkedHashMap<>(64, 0.75f, true);
+    private final LinkedHashMap<String, Entry> probation = new LinkedHashMap<>(256, 0.75f, true);
+    private final LinkedHashMap<String, Entry> protectedSegment = new LinkedHashMap<>(256, 0.75f, true);
+    private final FrequencySketch sketch;
+
+    private long windowBytes;
+    private long probationBytes;
+    private long protectedBytes;
+
+    private long hits;
+    private long misses;
+    private long evictions;
+    private long rejections;
+
+    public MediaMemoryCache(long maxBytes, long maxEntryBytes) {
+        this.maxBytes = maxBytes;
+        this.maxEntryBytes = Math.min(maxEntryBytes, maxBytes);
+        this.windowMax = Math.max(maxBytes / 100, this.maxEntryBytes);
+        this.mainMax = Math.max(0, maxBytes - windowMax);
+        this.protectedMax = mainMax * 8 / 10;
+        this.sketch = new FrequencySketch((int) Math.min(
+                Integer.MAX_VALUE,
+                Math.max(1, maxBytes / ASSUMED_AVERAGE_ENTRY_BYTES)));
+    }
+
+    public long maxEntryBytes() {
+        return maxEntryBytes;
+    }
+
+    /**
+     * Returns the entry retained for the caller, who must {@link Entry#release()}
+     * it once done, or {@code null} on a miss. Every call counts towards the
+     * key's popularity.
+     */
+    public synchronized Entry get(String key) {
+        sketch.increment(key);
+
+        Entry entry = window.get(key);
+        if (entry == null) {
+            entry = protectedSegment.get(key);
+        }
+        if (entry == null) {
+            entry = probation.remove(key);
+            if (entry != null) {
+                probationBytes -= entry.weight;
+                promote(entry);
+            }
+        }
+
+        if (entry == null) {
+            misses++;
+            return null;
+        }
+
+        hits++;
+        entry.data.retain();
+        return entry;
+    }
+
+    /**
+     * How often {@code key} has been requested recently, without recording an access.
+     */
+    public synchronized int frequency(String key) {
+        return sketch.frequency(key);
+    }
+
+    public synchronized boolean contains(String key) {
+        return window.containsKey(key)
+                || probation.containsKey(key)
+                || protectedSegment.containsKey(key);
+    }
+
+    /**
+     * {@link #put(String, ByteBuf, String, String, String)} for a Vert.x buffer.
+     */
+    public void put(String key, Buffer bytes, String contentType, String etag, String lastModified) {
+        put(key, NettyBuffers.byteBufOf(bytes), contentType, etag, lastModified);
+    }
+
+    /**
+     * Copies {@code bytes} into a pooled direct buffer owned by the cache.
+     * The candidate always enters the window; whether it survives into the
+     * main space is decided by TinyLFU when it is pushed out of the window.
+     */
+    public void put(String key, ByteBuf bytes, String contentType, String etag, String lastModified) {
+        int length = bytes.readableBytes();
+        if (length == 0 || length > maxEntryBytes) {
+            return;
+        }
+
+        ByteBuf copy = PooledByteBufAllocator.DEFAULT.directBuffer(length, length);
+        copy.writeBytes(bytes, bytes.readerIndex(), length);
+
+        Entry entry = new Entry(key, copy, contentType, etag, lastModified);
+        List<Entry> released = new ArrayList<>();
+
+        synchronized (this) {
+            removeExisting(key, released);
+
+            window.put(key, entry);
+            windowBytes += entry.weight;
+
+            Iterator<Entry> it = window.values().iterator();
+            while (windowBytes > windowMax && it.hasNext()) {
+                Entry candidate = it.next();
+                it.remove();
+                windowBytes -= candidate.weight;
+                admit(candidate, released);
+            }
+        }
+
+        released.forEach(Entry::release);
+    }
+
+    public void invalidate(String key) {
+        List<Entry> released = new ArrayList<>();
+        synchronized (this) {
+            removeExisting(key, released);
+        }
+        released.forEach(Entry::release);
+    }
+
+    public synchronized JsonObject stats() {
+        return new JsonObject()
+                .put("entries", window.size() + probation.size() + protectedSegment.size())
+                .put("bytes", windowBytes + probationBytes + protectedBytes)
+                .put("maxBytes", maxBytes)
+                .put("hits", hits)
+                .put("misses", misses)
+                .put("evictions", evictions)
+                .put("rejections", rejections);
+    }
+
+    /*
+     * ============================================================
+     * W-TinyLFU internals (caller holds the lock)
+     * ============================================================
+     */
+    private void admit(Entry candidate, List<Entry> released) {
+        if (probationBytes + protectedBytes + candidate.weight <= mainMax) {
+            probation.put(candidate.key, candidate);
+            probationBytes += candidate.weight;
+            return;
+        }
+
+        // Collect the victims the candidate would displace, coldest first.
+        List<Entry> victims = new ArrayList<>();
+        long freed = 0;
+        long needed = probationBytes + protectedBytes + candidate.weight - mainMax;
+        int candidateFrequency = sketch.frequency(candidate.key);
+
+        for (LinkedHashMap<String, Entry> segment : List.of(probation, protectedSegment)) {
+            for (Entry victim : segment.values()) {
+                if (freed >= needed) {
+                    break;
+                }
+                if (sketch.frequency(victim.key) >= candidateFrequency) {
+                    rejections++;
+                    released.add(candidate);
+                    return;
+                }
+                victims.add(victim);
+                freed += victim.weight;
+            }
+        }
+
+        if (freed < needed) {
+            rejections++;
+            released.add(candidate);
+            return;
+        }
+
+        for (Entry victim : victims) {
+            if (probation.remove(victim.key) != null) {
+                probationBytes -= victim.weight;
+            } else if (protectedSegment.remove(victim.key) != null) {
+                protectedBytes -= victim.weight;
+            }
+            evictions++;
+            released.add(victim);
+        }
+
+        probation.put(candidate.key, candidate);
+        probationBytes += candidate.weight;
+    }
+
+    private void promote(Entry entry) {
+        protectedSegment.put(entry.key, entry);
+        protectedBytes += entry.weight;
+
+        // Overflowing protected entries get a second chance in probation.
+        Iterator<Entry> it = protectedSegment.values().iterator();
+        while (protectedBytes > protectedMax && it.hasNext()) {
+            Entry demoted = it.next();
+            if (demoted == entry) {
+                continue;
+            }
+            it.remove();
+            protectedBytes -= demoted.weight;
+            probation.put(demoted.key, demoted);
+            probationBytes += demoted.weight;
+        }
+    }
+
+    private void removeExisting(String key, List<Entry> released) {
+        Entry previous = window.remove(key);
+        if (previous != null) {
+            windowBytes -= previous.weight;
+        } else if ((previous = probation.remove(key)) != null) {
+            probationBytes -= previous.weight;
+        } else if ((previous = protectedSegment.remove(key)) != null) {
+            protectedBytes -= previous.weight;
+        }
+        if (previous != null) {
+            released.add(previous);
+        }
+    }
+
+    /**
+     * A cached variant. {@link #data} must only be read between a successful
+     * {@link MediaMemoryCache#get(String)} and the matching {@link #release()}.
+     */
+    public static final class Entry {
+
+        public final String key;
+        public final ByteBuf data;
+        public final String contentType;
+        public final String etag;
+        public final String lastModified;
+        final int weight;
+
+        private Entry(String key, ByteBuf data, String contentType, String etag, String lastModified) {
+            this.key = key;
+            this.data = data;
+            this.contentType = contentType;
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.weight = data.capacity();
+        }
+
+        public int length() {
+            return data.readableBytes();
+        }
+
+        public void release() {
+            data.release();
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package com.thisday.media;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.streams.WriteStream;
+
+/**
+ * Collects a streamed variant into a pooled buffer and offers it to the
+ * memory tier once the body is complete.
+ */
+public class MediaMemoryFill implements WriteStream<Buffer> {
+
+    private final MediaMemoryCache cache;
+    private final String key;
+    private final String contentType;
+    private final String etag;
+    private final String lastModified;
+    private final long expectedLength;
+    private ByteBuf collected;
+
+    public MediaMemoryFill(
+            MediaMemoryCache cache,
+            String key,
+            String contentType,
+            String etag,
+            String lastModified,
+            long expectedLength
+    ) {
+        this.cache = cache;
+        this.key = key;
+        this.contentType = contentType;
+        this.etag = etag;
+        this.lastModified = lastModified;
+        this.expectedLength = expectedLength;
+        this.collected = PooledByteBufAllocator.DEFAULT.directBuffer((int) expectedLength, (int) expectedLength);
+    }
+
+    @Override
+    public MediaMemoryFill exceptionHandler(Handler<Throwable> handler) {
+        return this;
+    }
+
+    @Override
+    public synchronized Future<Void> write(Buffer data) {
+        if (collected == null) {
+            return Future.failedFuture("Memory fill already finished");
+        }
+        if (collected.writableBytes() < data.length()) {
+            abort();
+            return Future.failedFuture("Memory fill exceeded expected length");
+        }
+        ByteBuf bytes = NettyBuffers.byteBufOf(data);
+        collected.writeBytes(bytes, bytes.readerIndex(), bytes.readableBytes());
+        return Future.succeededFuture();
+    }
+
+    @Override
+    public void write(Buffer data, Handler<AsyncResult<Void>> handler) {
+        Future<Void> fut = write(data);
+        if (handler != null) {
+            fut.onComplete(handler);
+        }
+    }
+
+    @Override
+    public Future<Void> end() {
+        ByteBuf bytes;
+        synchronized (this) {
+            bytes = collected;
+            collected = null;
+        }
+        if (bytes == null) {
+            return Future.succeededFuture();
+        }
+        try {
+            if (bytes.readableBytes() == expectedLength) {
+                cache.put(key, bytes, contentType, etag, lastModified);
+            }
+        } finally {
+            bytes.release();
+        }
+        return Future.succeededFuture();
+    }
+
+    @Override
+    public void end(Handler<AsyncResult<Void>> handler) {
+        Future<Void> fut = end();
+        if (handler != null) {
+            fut.onComplete(handler);
+        }
+    }
+
+    /**
+     * Releases the partial body; no-op once ended.
+     */
+    public synchronized void abort() {
+        if (collected != null) {
+            collected.release();
+            collected = null;
+        }
+    }
+
+    @Override
+    public MediaMemoryFill setWriteQueueMaxSize(int maxSize) {
+        return this;
+    }
+
+    @Override
+    public boolean writeQueueFull() {
+        return false;
+    }
+
+    @Override
+    public MediaMemoryFill drainHandler(Handler<Void> handler) {
+        return this;
+    }
+}
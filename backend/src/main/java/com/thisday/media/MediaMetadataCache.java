@@ -0,0 +1,195 @@
+package com.thisday.media;
+
+import com.thisday.immich.ImmichClient;
+import io.vertx.core.Future;
+import io.vertx.core.Promise;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Resolves the media type, content type and size of Immich assets for the
+ * batched metadata endpoint.
+ * <p>
+ * Asset metadata never changes once uploaded, so resolved items are kept in a
+ * bounded LRU for the life of the process. Lookups for the same asset share
+ * one Immich call, and at most {@code maxConcurrentFetches} calls run at a
+ * time across all batches.
+ */
+public class MediaMetadataCache {
+
+    private static final Logger log =
+            LoggerFactory.getLogger(MediaMetadataCache.class);
+
+    // Image types browsers decode natively; any other image type needs the
+    // browser fallback, so the UI starts it from the preview.
+    private static final Set<String> BROWSER_IMAGE_TYPES = Set.of(
+            "image/jpeg", "image/jpg", "image/png", "image/gif",
+            "image/webp", "image/avif", "image/bmp", "image/svg+xml"
+    );
+
+    private final ImmichClient immichClient;
+    private final int maxEntries;
+    private final int maxConcurrentFetches;
+
+    private final LinkedHashMap<String, JsonObject> items = new LinkedHashMap<>(256, 0.75f, true);
+    private final ConcurrentHashMap<String, Future<JsonObject>> inFlight = new ConcurrentHashMap<>();
+    private final ArrayDeque<Runnable> queued = new ArrayDeque<>();
+    private int activeFetches;
+
+    private long hits;
+    private long misses;
+    private long failures;
+
+    public MediaMetadataCache(ImmichClient immichClient, int maxEntries, int maxConcurrentFetches) {
+        this.immichClient = immichClient;
+        this.maxEntries = maxEntries;
+        this.maxConcurrentFetches = Math.max(1, maxConcurrentFetches);
+    }
+
+    /**
+     * Resolves every asset, in request order. Assets Immich cannot describe
+     * come back with {@code mediaType: "unknown"} rather than failing the batch.
+     */
+    public Future<JsonArray> resolve(List<String> assetIds) {
+        List<Future<JsonObject>> lookups = new ArrayList<>(assetIds.size());
+        for (String assetId : assetIds) {
+            lookups.add(lookup(assetId).recover(err -> Future.succeededFuture(unknown(assetId))));
+        }
+
+        return Future.join(new ArrayList<>(lookups)).map(done -> {
+            JsonArray result = new JsonArray();
+            lookups.forEach(lookup -> result.add(lookup.result().copy()));
+            return result;
+        });
+    }
+
+    public synchronized JsonObject stats() {
+        return new JsonObject()
+                .put("entries", items.size())
+                .put("hits", hits)
+                .put("misses", misses)
+                .put("failures", failures)
+                .put("activeFetches", activeFetches)
+                .put("queuedFetches", queued.size());
+    }
+
+    private Future<JsonObject> lookup(String assetId) {
+        synchronized (this) {
+            JsonObject cached = items.get(assetId);
+            if (cached != null) {
+                hits++;
+                return Future.succeededFuture(cached);
+            }
+            misses++;
+        }
+
+        Promise<JsonObject> promise = Promise.promise();
+        Future<JsonObject> existing = inFlight.putIfAbsent(assetId, promise.future());
+        if (existing != null) {
+            return existing;
+        }
+
+        schedule(() -> immichClient.getAssetInfo(assetId)
+                .map(info -> describe(assetId, info))
+                .onComplete(ar -> {
+                    inFlight.remove(assetId);
+                    if (ar.succeeded()) {
+                        remember(assetId, ar.result());
+                    } else {
+                        synchronized (this) {
+                            failures++;
+                        }
+                        log.debug("Asset metadata unavailable [assetId={}]: {}", assetId, ar.cause().getMessage());
+                    }
+                    promise.handle(ar);
+                    finished();
+                }));
+
+        return promise.future();
+    }
+
+    /*
+     * ============================================================
+     * Upstream concurrency limit
+     * ============================================================
+     */
+    private void schedule(Runnable fetch) {
+        synchronized (this) {
+            if (activeFetches >= maxConcurrentFetches) {
+                queued.add(fetch);
+                return;
+            }
+            activeFetches++;
+        }
+        fetch.run();
+    }
+
+    private void finished() {
+        Runnable next;
+        synchronized (this) {
+            next = queued.poll();
+            if (next == null) {
+                activeFetches--;
+                return;
+            }
+        }
+        // the finished fetch's slot passes straight to the next one
+        next.run();
+    }
+
+    private synchronized void remember(String assetId, JsonObject item) {
+        items.put(assetId, item);
+        Iterator<String> it = items.keySet().iterator();
+        while (items.size() > maxEntries && it.hasNext()) {
+            it.next();
+            it.remove();
+        }
+    }
+
+    /*
+     * ============================================================
+     * Mapping
+     * ============================================================
+     */
+    private static JsonObject describe(String assetId, JsonObject info) {
+        String type = info.getString("type", "");
+        String contentType = info.getString("originalMimeType");
+
+        String mediaType = switch (type.toUpperCase(Locale.ROOT)) {
+            case "IMAGE" -> "image";
+            case "VIDEO" -> "video";
+            default -> "unknown";
+        };
+
+        Long contentLength = null;
+        JsonObject exif = info.getJsonObject("exifInfo");
+        if (exif != null && exif.getValue("fileSizeInByte") instanceof Number size) {
+            contentLength = size.longValue();
+        }
+
+        boolean requiresBrowserFallback = "image".equals(mediaType)
+                && contentType != null
+                && !BROWSER_IMAGE_TYPES.contains(contentType.toLowerCase(Locale.ROOT));
+
+        return new JsonObject()
+                .put("id", assetId)
+                .put("mediaType", mediaType)
+                .put("contentType", contentType)
+                .put("contentLength", contentLength)
+                .put("requiresBrowserFallback", requiresBrowserFallback);
+    }
+
+    private static JsonObject unknown(String assetId) {
+        return new JsonObject()
+                .put("id", assetId)
+                .put("mediaType", "unknown")
+                .putNull("contentType")
+                .putNull("contentLength")
+                .put("requiresBrowserFallback", false);
+    }
+}
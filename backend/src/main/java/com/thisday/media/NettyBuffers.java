@@ -0,0 +1,34 @@
+package com.thisday.media;
+
+import io.netty.buffer.ByteBuf;
+import io.vertx.core.buffer.Buffer;
+
+/**
+ * The one place the memory tier crosses between Vert.x and Netty buffers.
+ * <p>
+ * Vert.x 4 deprecates both directions without a public replacement, so they
+ * stay here behind a single suppression instead of reaching into
+ * {@code io.vertx.core.buffer.impl}.
+ */
+@SuppressWarnings("deprecation")
+public final class NettyBuffers {
+
+    private NettyBuffers() {
+    }
+
+    /**
+     * The bytes behind {@code buffer} without copying them. The result has its
+     * own indices and must not be released by the caller.
+     */
+    public static ByteBuf byteBufOf(Buffer buffer) {
+        return buffer.getByteBuf();
+    }
+
+    /**
+     * Wraps {@code bytes} without copying; the caller keeps ownership and must
+     * hold its reference until the buffer has been written.
+     */
+    public static Buffer bufferOf(ByteBuf bytes) {
+        return Buffer.buffer(bytes);
+    }
+}
@@ -0,0 +1,97 @@
+package com.thisday.media;
+
+/**
+ * A requested resize ({@code w=}, {@code h=}, {@code fit=}), quantized onto a
+ * fixed ladder of edge sizes so that near-identical requests share one cached
+ * rendition.
+ */
+public final class ResizeSpec {
+
+    public enum Fit {
+        COVER,
+        CONTAIN
+    }
+
+    // Every rendition edge we produce; requests round up to the next step.
+    private static final int[] EDGE_STEPS = {
+            32, 48, 64, 96, 128, 160, 192, 256, 320, 384,
+            480, 640, 800, 960, 1080, 1280, 1600, 2048
+    };
+
+    public final int width;   // 0 = unconstrained
+    public final int height;  // 0 = unconstrained
+    public final Fit fit;
+
+    private ResizeSpec(int width, int height, Fit fit) {
+        this.width = width;
+        this.height = height;
+        this.fit = fit;
+    }
+
+    /**
+     * Parses the query parameters.
+     *
+     * @return {@code null} when neither {@code w} nor {@code h} was given
+     * @throws IllegalArgumentException when a parameter is not valid
+     */
+    public static ResizeSpec parse(String w, String h, String fit) {
+        if (isBlank(w) && isBlank(h)) {
+            return null;
+        }
+
+        int width = parseEdge("w", w);
+        int height = parseEdge("h", h);
+
+        Fit mode;
+        if (isBlank(fit) || "cover".equalsIgnoreCase(fit)) {
+            mode = Fit.COVER;
+        } else if ("contain".equalsIgnoreCase(fit) || "inside".equalsIgnoreCase(fit)) {
+            mode = Fit.CONTAIN;
+        } else {
+            throw new IllegalArgumentException("Invalid fit: " + fit);
+        }
+
+        // Cropping needs both edges; a single edge only scales.
+        if (width == 0 || height == 0) {
+            mode = Fit.CONTAIN;
+        }
+
+        return new ResizeSpec(width, height, mode);
+    }
+
+    public int longestEdge() {
+        return Math.max(width, height);
+    }
+
+    /**
+     * Cache key suffix, e.g. {@code w256h256-cover}.
+     */
+    public String key() {
+        return "w" + width + "h" + height + "-" + fit.name().toLowerCase();
+    }
+
+    private static int parseEdge(String name, String value) {
+        if (isBlank(value)) {
+            return 0;
+        }
+        int edge;
+        try {
+            edge = Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid " + name + ": " + value);
+        }
+        if (edge <= 0) {
+            throw new IllegalArgumentException("Invalid " + name + ": " + value);
+        }
+        for (int step : EDGE_STEPS) {
+            if (edge <= step) {
+                return step;
+            }
+        }
+        return EDGE_STEPS[EDGE_STEPS.length - 1];
+    }
+
+    private static boolean isBlank(String value) {
+        return value == null || value.isBlank();
+    }
+}
@@ -0,0 +1,88 @@
+package com.thisday.media;
+
+import io.vertx.core.Handler;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.streams.ReadStream;
+
+/**
+ * Passes a stream through unchanged while keeping its first bytes and
+ * counting the rest, so a file that is never stored can still be probed
+ * (dimensions, EXIF) once it has gone by.
+ */
+public class SniffingReadStream implements ReadStream<Buffer> {
+
+    private final ReadStream<Buffer> source;
+    private final int headLimit;
+    private final Buffer head = Buffer.buffer();
+    private long length;
+
+    public SniffingReadStream(ReadStream<Buffer> source, int headLimit) {
+        this.source = source;
+        this.headLimit = headLimit;
+    }
+
+    /**
+     * Up to {@code headLimit} bytes from the start of the stream.
+     */
+    public synchronized Buffer head() {
+        return head;
+    }
+
+    /**
+     * Bytes passed through so far.
+     */
+    public synchronized long length() {
+        return length;
+    }
+
+    @Override
+    public SniffingReadStream handler(Handler<Buffer> handler) {
+        if (handler == null) {
+            source.handler(null);
+            return this;
+        }
+        source.handler(chunk -> {
+            sniff(chunk);
+            handler.handle(chunk);
+        });
+        return this;
+    }
+
+    @Override
+    public SniffingReadStream exceptionHandler(Handler<Throwable> handler) {
+        source.exceptionHandler(handler);
+        return this;
+    }
+
+    @Override
+    public SniffingReadStream pause() {
+        source.pause();
+        return this;
+    }
+
+    @Override
+    public SniffingReadStream resume() {
+        source.resume();
+        return this;
+    }
+
+    @Override
+    public SniffingReadStream fetch(long amount) {
+        source.fetch(amount);
+        return this;
+    }
+
+    @Override
+    public SniffingReadStream endHandler(Handler<Void> endHandler) {
+        source.endHandler(endHandler);
+        return this;
+    }
+
+    private synchronized void sniff(Buffer chunk) {
+        length += chunk.length();
+        int room = headLimit - head.length();
+        if (room > 0) {
+            head.appendBuffer(chunk, 0, Math.min(room, chunk.length()));
+        }
+    }
+}
@@ -6,7 +6,10 @@ import io.vertx.core.json.JsonObject;
 import java.time.Instant;
 import java.time.LocalDate;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 
 public class Entry {
 
@@ -21,6 +24,10 @@ public class Entry {
     public String dayMonth;
 
     public List<String> immichAssetIds;
+    // what each asset is, parallel to immichAssetIds, so readers need not probe Immich
+    public List<Media> media;
+    // assetId → data: URI of a tiny JPEG to paint before the thumbnail loads
+    public Map<String, String> placeholders;
     public List<String> uploadedClientMediaIds;
     public String status;
     public int expectedMediaCount;
@@ -41,6 +48,8 @@ public class Entry {
         entry.dayMonth = doc.getString("dayMonth");
 
         entry.immichAssetIds = readStringList(doc, "immichAssetIds");
+        entry.media = readMediaList(doc);
+        entry.placeholders = readStringMap(doc, "placeholders");
         entry.uploadedClientMediaIds = readStringList(doc, "uploadedClientMediaIds");
         entry.status = doc.getString("status", STATUS_READY);
         entry.expectedMediaCount = doc.getInteger(
@@ -74,6 +83,14 @@ public class Entry {
         json.put("date", date.toString());
         json.put("dayMonth", dayMonth);
         json.put("immichAssetIds", immichAssetIds);
+        if (media != null && !media.isEmpty()) {
+            JsonArray mediaJson = new JsonArray();
+            media.forEach(item -> mediaJson.add(item.toJson()));
+            json.put("media", mediaJson);
+        }
+        if (placeholders != null && !placeholders.isEmpty()) {
+            json.put("placeholders", new JsonObject(new LinkedHashMap<>(placeholders)));
+        }
         json.put("uploadedClientMediaIds", uploadedClientMediaIds);
         json.put("status", status);
         json.put("expectedMediaCount", expectedMediaCount);
@@ -100,4 +117,82 @@ public class Entry {
         }
         return values;
     }
+
+    private static List<Media> readMediaList(JsonObject doc) {
+        JsonArray array = doc.getJsonArray("media", new JsonArray());
+        List<Media> values = new ArrayList<>();
+        for (Object value : array) {
+            if (value instanceof JsonObject json) {
+                values.add(Media.from(json));
+            }
+        }
+        return values;
+    }
+
+    private static Map<String, String> readStringMap(JsonObject doc, String fieldName) {
+        JsonObject object = doc.getJsonObject(fieldName, new JsonObject());
+        Map<String, String> values = new LinkedHashMap<>();
+        object.forEach(field -> {
+            if (field.getValue() instanceof String str) {
+                values.put(field.getKey(), str);
+            }
+        });
+        return values;
+    }
+
+    /**
+     * One uploaded asset as it was when it reached us.
+     */
+    public static class Media {
+
+        public static final String TYPE_IMAGE = "IMAGE";
+        public static final String TYPE_VIDEO = "VIDEO";
+        // neither image/* nor video/*; the probe upgrades it to IMAGE if it decodes as one
+        public static final String TYPE_UNKNOWN = "UNKNOWN";
+
+        public String assetId;
+        public String type;
+        public String contentType;
+        public long size;
+        // upright pixel size; null for videos and formats we cannot read
+        public Integer width;
+        public Integer height;
+
+        public static String typeOf(String contentType) {
+            String normalized = contentType == null ? "" : contentType.trim().toLowerCase(Locale.ROOT);
+            if (normalized.startsWith("image/")) {
+                return TYPE_IMAGE;
+            }
+            if (normalized.startsWith("video/")) {
+                return TYPE_VIDEO;
+            }
+            return TYPE_UNKNOWN;
+        }
+
+        public static Media from(JsonObject doc) {
+            Media media = new Media();
+            media.assetId = doc.getString("assetId");
+            media.type = doc.getString("type");
+            media.contentType = doc.getString("contentType");
+            media.size = doc.getLong("size", 0L);
+            media.width = doc.getInteger("width");
+            media.height = doc.getInteger("height");
+            return media;
+        }
+
+        public JsonObject toJson() {
+            JsonObject json = new JsonObject()
+                    .put("assetId", assetId)
+                    .put("type", type)
+                    .put("contentType", contentType)
+                    .put("size", size);
+
+            if (width != null && height != null) {
+                json.put("width", width);
+                json.put("height", height);
+            }
+
+            return json;
+        }
+    }
 }
@@ -195,6 +195,10 @@ public class EntryReadRepository {
                                         .put("_id", "$date")
                                         .put("allAssets",
                                                 new JsonObject().put("$push", "$immichAssetIds"))
+                                        .put("allMedia",
+                                                new JsonObject().put("$push", "$media"))
+                                        .put("placeholders",
+                                                new JsonObject().put("$mergeObjects", "$placeholders"))
                                         .put("hasCaption",
                                                 new JsonObject().put("$max", hasCaptionExpr()))
                         ))
@@ -205,6 +209,20 @@ public class EntryReadRepository {
                                         .put("hasEntries", true)
                                         .put("immichAssetId", firstValidAssetExpr())
                                         .put("hasCaption", "$hasCaption")
+                                        .put("allMedia", "$allMedia")
+                                        .put("placeholders", "$placeholders")
+                        ))
+
+                        // Media descriptor and placeholder of the chosen asset only
+                        .add(new JsonObject().put("$addFields",
+                                new JsonObject()
+                                        .put("media", mediaOfExpr("$immichAssetId"))
+                                        .put("placeholder", placeholderOfExpr("$immichAssetId"))
+                        ))
+                        .add(new JsonObject().put("$project",
+                                new JsonObject()
+                                        .put("allMedia", 0)
+                                        .put("placeholders", 0)
                         ));
 
                 return aggregate(pipeline);
@@ -297,6 +315,54 @@ public class EntryReadRepository {
                 );
         }
 
+        private JsonObject mediaOfExpr(String assetIdField) {
+                return new JsonObject().put("$arrayElemAt", new JsonArray()
+                        .add(new JsonObject().put("$filter",
+                                new JsonObject()
+                                        .put("input", new JsonObject().put("$reduce",
+                                                new JsonObject()
+                                                        .put("input", "$allMedia")
+                                                        .put("initialValue", new JsonArray())
+                                                        .put("in", new JsonObject().put("$concatArrays",
+                                                                new JsonArray()
+                                                                        .add("$$value")
+                                                                        .add(new JsonObject().put("$ifNull",
+                                                                                new JsonArray().add("$$this").add(new JsonArray())
+                                                                        ))
+                                                        ))
+                                        ))
+                                        .put("as", "m")
+                                        .put("cond", new JsonObject().put("$eq",
+                                                new JsonArray().add("$$m.assetId").add(assetIdField)
+                                        ))
+                        ))
+                        .add(0)
+                );
+        }
+
+        private JsonObject placeholderOfExpr(String assetIdField) {
+                return new JsonObject().put("$let", new JsonObject()
+                        .put("vars", new JsonObject().put("hit",
+                                new JsonObject().put("$arrayElemAt", new JsonArray()
+                                        .add(new JsonObject().put("$filter",
+                                                new JsonObject()
+                                                        .put("input", new JsonObject().put("$objectToArray",
+                                                                new JsonObject().put("$ifNull",
+                                                                        new JsonArray().add("$placeholders").add(new JsonObject())
+                                                                )
+                                                        ))
+                                                        .put("as", "p")
+                                                        .put("cond", new JsonObject().put("$eq",
+                                                                new JsonArray().add("$$p.k").add(assetIdField)
+                                                        ))
+                                        ))
+                                        .add(0)
+                                )
+                        ))
+                        .put("in", "$$hit.v")
+                );
+        }
+
         private Future<JsonArray> aggregate(JsonArray pipeline) {
                 Promise<JsonArray> promise = Promise.promise();
                 List<JsonObject> results = new ArrayList<>();
@@ -3,12 +3,14 @@ package com.thisday.repositories;
 import com.thisday.db.Collections;
 import com.thisday.models.Entry;
 import io.vertx.core.*;
+import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
 import io.vertx.ext.mongo.MongoClient;
 import io.vertx.ext.mongo.MongoClientUpdateResult;
 
 import java.time.Instant;
 import java.util.List;
+import java.util.Map;
 
 public class EntryRepository {
 
@@ -75,6 +77,8 @@ public class EntryRepository {
             String userId,
             String caption,
             List<String> addAssetIds,
+            List<Entry.Media> addMedia,
+            Map<String, String> addPlaceholders,
             List<String> removeAssetIds
     ) {
         Promise<Void> promise = Promise.promise();
@@ -84,21 +88,36 @@ public class EntryRepository {
             update.put("caption", caption);
         }
 
+        addPlaceholders.forEach((assetId, placeholder) ->
+                update.put("placeholders." + assetId, placeholder));
+
         update.put("updatedAt", Instant.now().toString());
 
         JsonObject updateDoc = new JsonObject()
                 .put("$set", update);
 
         if (!addAssetIds.isEmpty()) {
+            JsonArray mediaJson = new JsonArray();
+            addMedia.forEach(item -> mediaJson.add(item.toJson()));
+
             updateDoc.put("$push", new JsonObject()
                     .put("immichAssetIds",
-                            new JsonObject().put("$each", addAssetIds)));
+                            new JsonObject().put("$each", addAssetIds))
+                    .put("media",
+                            new JsonObject().put("$each", mediaJson)));
         }
 
         if (!removeAssetIds.isEmpty()) {
             updateDoc.put("$pull", new JsonObject()
                     .put("immichAssetIds",
-                            new JsonObject().put("$in", removeAssetIds)));
+                            new JsonObject().put("$in", removeAssetIds))
+                    .put("media",
+                            new JsonObject().put("assetId",
+                                    new JsonObject().put("$in", removeAssetIds))));
+
+            JsonObject unset = new JsonObject();
+            removeAssetIds.forEach(assetId -> unset.put("placeholders." + assetId, ""));
+            updateDoc.put("$unset", unset);
         }
 
         mongo.updateCollection(
@@ -119,9 +138,11 @@ public class EntryRepository {
     public Future<Entry> appendUploadedAsset(
             String entryId,
             String userId,
-            String assetId,
+            Entry.Media media,
+            String placeholder,
             String clientMediaId
     ) {
+        String assetId = media.assetId;
         Promise<Entry> promise = Promise.promise();
 
         JsonObject query = new JsonObject()
@@ -130,12 +151,18 @@ public class EntryRepository {
 
         JsonObject pushDoc = new JsonObject()
                 .put("immichAssetIds", assetId)
+                .put("media", media.toJson())
                 .put("uploadedClientMediaIds", clientMediaId == null ? "" : clientMediaId);
 
+        JsonObject setDoc = new JsonObject().put("updatedAt", Instant.now().toString());
+        if (placeholder != null) {
+            setDoc.put("placeholders." + assetId, placeholder);
+        }
+
         JsonObject updateDoc = new JsonObject()
                 .put("$push", pushDoc)
                 .put("$inc", new JsonObject().put("uploadedMediaCount", 1))
-                .put("$set", new JsonObject().put("updatedAt", Instant.now().toString()));
+                .put("$set", setDoc);
 
         mongo.updateCollection(Collections.ENTRIES, query, updateDoc, ar -> {
             if (ar.failed()) {
@@ -0,0 +1,119 @@
+package com.thisday.routes;
+
+import com.thisday.auth.AuthHandler;
+import com.thisday.auth.MediaUrlSigner;
+import com.thisday.services.CalendarSpriteService;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.web.Router;
+import io.vertx.ext.web.RoutingContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Locale;
+
+public class CalendarSpriteRoutes {
+
+    private static final Logger log =
+            LoggerFactory.getLogger(CalendarSpriteRoutes.class);
+
+    public static void mount(
+            Router router,
+            AuthHandler authHandler,
+            MediaUrlSigner mediaUrlSigner,
+            CalendarSpriteService calendarSpriteService
+    ) {
+
+        // Month sprite manifest (tile offsets per date)
+        router.get("/api/entries/calendar/sprite")
+                .handler(authHandler)
+                .handler(ctx -> {
+
+                    String userId =
+                            ctx.<JsonObject>get("authUser")
+                                    .getString("sub");
+
+                    int year;
+                    int month;
+                    try {
+                        year = Integer.parseInt(ctx.request().getParam("year"));
+                        month = Integer.parseInt(ctx.request().getParam("month"));
+                    } catch (NumberFormatException e) {
+                        badRequest(ctx, "year and month are required");
+                        return;
+                    }
+                    String size = ctx.request().getParam("size");
+
+                    log.info(
+                            "Fetching calendar sprite user={} year={} month={} size={}",
+                            userId, year, month, size
+                    );
+
+                    try {
+                        calendarSpriteService.getSprite(userId, year, month, size).onComplete(ar -> {
+                            if (ar.failed()) {
+                                log.error("Get calendar sprite failed", ar.cause());
+                                ctx.response()
+                                        .setStatusCode(statusCodeFor(ar.cause()))
+                                        .putHeader("Content-Type", "application/json")
+                                        .end(new JsonObject()
+                                                .put("error", String.valueOf(ar.cause().getMessage()))
+                                                .encode());
+                            } else {
+                                ctx.response()
+                                        .putHeader("Content-Type", "application/json")
+                                        .end(ar.result().encode());
+                            }
+                        });
+                    } catch (IllegalArgumentException e) {
+                        badRequest(ctx, e.getMessage());
+                    }
+                });
+
+        mountImages(router, mediaUrlSigner, calendarSpriteService);
+    }
+
+    /**
+     * Just the sprite image routes, for the dedicated media server.
+     */
+    public static void mountImages(
+            Router router,
+            MediaUrlSigner mediaUrlSigner,
+            CalendarSpriteService calendarSpriteService
+    ) {
+
+        // Sprite image; signed like asset URLs
+        router.get("/api/media/sprite/:version")
+                .handler(mediaUrlSigner)
+                .handler(ctx -> calendarSpriteService.serveSprite(ctx.pathParam("version"), ctx));
+
+        router.head("/api/media/sprite/:version")
+                .handler(mediaUrlSigner)
+                .handler(ctx -> calendarSpriteService.serveSprite(ctx.pathParam("version"), ctx));
+    }
+
+    private static int statusCodeFor(Throwable cause) {
+        if (cause == null || cause.getMessage() == null) {
+            return 502;
+        }
+        String message = cause.getMessage().toLowerCase(Locale.ROOT);
+
+        if (message.contains("invalid")) {
+            return 400;
+        }
+        if (message.contains("not found")) {
+            return 404;
+        }
+        if (message.startsWith("immich unavailable")) {
+            return 503;
+        }
+
+        return 502;
+    }
+
+    private static void badRequest(RoutingContext ctx, String message) {
+        ctx.response()
+                .setStatusCode(400)
+                .putHeader("Content-Type", "application/json")
+                .end(new JsonObject().put("error", message).encode());
+    }
+}
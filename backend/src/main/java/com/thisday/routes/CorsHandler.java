@@ -0,0 +1,41 @@
+package com.thisday.routes;
+
+import io.vertx.core.Handler;
+import io.vertx.core.http.HttpMethod;
+import io.vertx.ext.web.RoutingContext;
+
+/**
+ * Allows all origins (no validation) and short-circuits preflight requests.
+ */
+public class CorsHandler implements Handler<RoutingContext> {
+
+    @Override
+    public void handle(RoutingContext ctx) {
+        String origin = ctx.request().getHeader("Origin");
+        if (origin != null && !origin.isBlank()) {
+            ctx.response().putHeader("Access-Control-Allow-Origin", origin);
+            ctx.response().putHeader("Vary", "Origin");
+        } else {
+            ctx.response().putHeader("Access-Control-Allow-Origin", "*");
+        }
+
+        ctx.response().putHeader(
+                "Access-Control-Allow-Methods",
+                "GET, POST, PUT, DELETE, OPTIONS, HEAD"
+        );
+        ctx.response().putHeader(
+                "Access-Control-Allow-Headers",
+                "Content-Type, Authorization, authorization, Accept, Origin, " +
+                        "Access-Control-Request-Method, Access-Control-Request-Headers"
+        );
+        ctx.response().putHeader("Access-Control-Allow-Credentials", "true");
+        ctx.response().putHeader("Access-Control-Max-Age", "86400");
+
+        if (ctx.request().method() == HttpMethod.OPTIONS) {
+            ctx.response().setStatusCode(204).end();
+            return;
+        }
+
+        ctx.next();
+    }
+}
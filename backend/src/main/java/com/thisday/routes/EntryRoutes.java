@@ -1,8 +1,12 @@
 package com.thisday.routes;
 
 import com.thisday.auth.AuthHandler;
+import com.thisday.config.AppConfig;
 import com.thisday.models.Entry;
 import com.thisday.services.EntryService;
+import io.vertx.core.http.HttpMethod;
+import io.vertx.core.http.HttpServerFileUpload;
+import io.vertx.core.http.HttpServerRequest;
 import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
 import io.vertx.ext.web.Router;
@@ -15,10 +19,12 @@ import java.time.Instant;
 import java.time.LocalDate;
 import java.time.ZoneId;
 import java.util.*;
+import java.util.regex.Pattern;
 
 public class EntryRoutes {
 
     private static final Logger log = LoggerFactory.getLogger(EntryRoutes.class);
+    private static final Pattern STREAMED_UPLOAD_PATH = Pattern.compile("/api/entries/[^/]+/media");
 
     public static void mount(
             Router router,
@@ -80,10 +86,31 @@ public class EntryRoutes {
                             });
                 });
 
+        BodyHandler spooledUpload = BodyHandler.create().setDeleteUploadedFilesOnEnd(false);
+
         router.post("/api/entries/:entryId/media")
-                .handler(BodyHandler.create().setDeleteUploadedFilesOnEnd(false))
+                .handler(ctx -> {
+                    if (!isStreamedUpload(ctx.request())) {
+                        spooledUpload.handle(ctx);
+                        return;
+                    }
+                    // Hold the body through auth; whatever happens after, never leave the
+                    // connection stuck on a half-read request.
+                    ctx.request().pause();
+                    ctx.addEndHandler(ar -> {
+                        if (!ctx.request().isEnded()) {
+                            ctx.request().resume();
+                        }
+                    });
+                    ctx.next();
+                })
                 .handler(authHandler)
                 .handler(ctx -> {
+                    if (isStreamedUpload(ctx.request())) {
+                        handleStreamedUpload(ctx, entryService);
+                        return;
+                    }
+
                     String entryId = ctx.pathParam("entryId");
                     String userId = ctx.<JsonObject>get("authUser").getString("sub");
                     String clientMediaId = ctx.request().getFormAttribute("clientMediaId");
@@ -120,7 +147,7 @@ public class EntryRoutes {
 
                     MultipartForm form = buildForm(uploads.get(0), userId, clientMediaId);
 
-                    entryService.uploadPendingEntryMedia(entryId, userId, form, clientMediaId)
+                    entryService.uploadPendingEntryMedia(entryId, userId, form, clientMediaId, storageSaver(ctx))
                             .onComplete(ar -> {
                                 if (ar.failed()) {
                                     failWithMessage(ctx, ar.cause(), "Upload media to pending entry failed");
@@ -158,7 +185,7 @@ public class EntryRoutes {
                     String userId = ctx.<JsonObject>get("authUser").getString("sub");
                     String caption = ctx.request().getFormAttribute("caption");
                     List<MultipartForm> forms = buildForms(ctx.fileUploads(), userId);
-                    entryService.createEntry(userId, caption, forms).onComplete(ar -> {
+                    entryService.createEntry(userId, caption, forms, storageSaver(ctx)).onComplete(ar -> {
                         if (ar.failed()) {
                             ctx.fail(500);
                             log.error("Create entry failed", ar.cause());
@@ -198,7 +225,8 @@ public class EntryRoutes {
                             userId,
                             date,
                             caption,
-                            forms
+                            forms,
+                            storageSaver(ctx)
                     ).onComplete(ar -> {
                         if (ar.failed()) {
                             ctx.fail(500);
@@ -249,10 +277,14 @@ public class EntryRoutes {
         int status = statusCodeFor(cause);
         String message = cause == null ? "Unknown error" : String.valueOf(cause.getMessage());
         log.error(logMessage, cause);
+        JsonObject body = new JsonObject().put("error", message);
+        if (cause instanceof EntryService.UploadBatchException batch) {
+            body.put("files", batch.files());
+        }
         ctx.response()
                 .setStatusCode(status)
                 .putHeader("Content-Type", "application/json")
-                .end(new JsonObject().put("error", message).encode());
+                .end(body.encode());
     }
 
     private static int statusCodeFor(Throwable cause) {
@@ -264,6 +296,9 @@ public class EntryRoutes {
         if (message.contains("not found")) {
             return 404;
         }
+        if (message.startsWith("immich unavailable")) {
+            return 503;
+        }
         if (message.contains("future date")
                 || message.contains("invalid")
                 || message.contains("expectedmediacount")) {
@@ -278,6 +313,131 @@ public class EntryRoutes {
         return 500;
     }
 
+    /**
+     * Whether this request is a pending-entry media upload that is piped to
+     * Immich as it arrives. Multipart fields are only decoded once the whole
+     * body is in, so a client opts in by putting {@code clientMediaId} (or
+     * {@code stream=true}) in the query string, where it is known before the
+     * file starts. Storage-saver uploads are always spooled, since they are
+     * decoded before being sent.
+     */
+    public static boolean isStreamedUpload(HttpServerRequest request) {
+        if (!AppConfig.MEDIA_STREAM_UPLOADS || request.method() != HttpMethod.POST) {
+            return false;
+        }
+        String contentType = request.getHeader("Content-Type");
+        if (contentType == null || !contentType.toLowerCase(Locale.ROOT).startsWith("multipart/form-data")) {
+            return false;
+        }
+        if (!STREAMED_UPLOAD_PATH.matcher(request.path()).matches()) {
+            return false;
+        }
+        if (request.getParam("clientMediaId") == null && !"true".equalsIgnoreCase(request.getParam("stream"))) {
+            return false;
+        }
+        String saver = request.getParam("storageSaver");
+        boolean storageSaver = saver == null || saver.isBlank()
+                ? AppConfig.MEDIA_SAVER_DEFAULT
+                : "true".equalsIgnoreCase(saver) || "1".equals(saver);
+        return !storageSaver;
+    }
+
+    private static void handleStreamedUpload(
+            io.vertx.ext.web.RoutingContext ctx,
+            EntryService entryService
+    ) {
+        String entryId = ctx.pathParam("entryId");
+        String userId = ctx.<JsonObject>get("authUser").getString("sub");
+        HttpServerRequest request = ctx.request();
+
+        boolean[] started = {false};
+        request.setExpectMultipart(true);
+
+        request.uploadHandler(upload -> {
+            if (started[0]) {
+                // one file per request; extra parts are read and dropped
+                log.warn("Ignoring extra file in streamed upload entryId={}", entryId);
+                upload.handler(buffer -> {
+                });
+                return;
+            }
+            started[0] = true;
+            upload.pause();
+
+            String clientMediaId = request.getParam("clientMediaId");
+            if (clientMediaId != null && clientMediaId.length() > 128) {
+                discard(upload);
+                ctx.response()
+                        .setStatusCode(400)
+                        .putHeader("Content-Type", "application/json")
+                        .end(new JsonObject()
+                                .put("error", "clientMediaId is too long")
+                                .encode());
+                return;
+            }
+
+            entryService.uploadPendingEntryMediaStream(
+                    entryId,
+                    userId,
+                    upload,
+                    upload.filename(),
+                    upload.contentType(),
+                    uploadAttributes(userId, clientMediaId),
+                    clientMediaId
+            ).onComplete(ar -> {
+                if (!request.isEnded()) {
+                    discard(upload);
+                }
+                if (ar.failed()) {
+                    failWithMessage(ctx, ar.cause(), "Streamed upload to pending entry failed");
+                    return;
+                }
+
+                ctx.response()
+                        .setStatusCode(200)
+                        .putHeader("Content-Type", "application/json")
+                        .end(ar.result().encode());
+            });
+        });
+
+        request.endHandler(v -> {
+            if (!started[0] && !ctx.response().ended()) {
+                ctx.response()
+                        .setStatusCode(400)
+                        .putHeader("Content-Type", "application/json")
+                        .end(new JsonObject()
+                                .put("error", "No media file found")
+                                .encode());
+            }
+        });
+
+        request.resume();
+    }
+
+    /**
+     * Reads and drops the rest of a file part nobody is going to use.
+     */
+    private static void discard(HttpServerFileUpload upload) {
+        upload.handler(buffer -> {
+        });
+        upload.resume();
+    }
+
+    /**
+     * Storage-saver mode for this upload: the {@code storageSaver} form field
+     * or query parameter, else the server default.
+     */
+    private static boolean storageSaver(io.vertx.ext.web.RoutingContext ctx) {
+        String value = ctx.request().getFormAttribute("storageSaver");
+        if (value == null) {
+            value = ctx.request().getParam("storageSaver");
+        }
+        if (value == null || value.isBlank()) {
+            return AppConfig.MEDIA_SAVER_DEFAULT;
+        }
+        return "true".equalsIgnoreCase(value) || "1".equals(value);
+    }
+
     private static List<MultipartForm> buildForms(
             List<io.vertx.ext.web.FileUpload> uploads,
             String userId) {
@@ -295,21 +455,31 @@ public class EntryRoutes {
             String userId,
             String clientMediaId
     ) {
+        MultipartForm form = MultipartForm.create()
+                .binaryFileUpload(
+                        "assetData",
+                        upload.fileName(),
+                        upload.uploadedFileName(),
+                        upload.contentType());
+        uploadAttributes(userId, clientMediaId).forEach(form::attribute);
+        return form;
+    }
+
+    /**
+     * The Immich asset fields sent alongside every uploaded file.
+     */
+    private static Map<String, String> uploadAttributes(String userId, String clientMediaId) {
         String deviceAssetId =
                 clientMediaId == null || clientMediaId.isBlank()
                         ? UUID.randomUUID().toString()
                         : clientMediaId;
 
-        return MultipartForm.create()
-                .binaryFileUpload(
-                        "assetData",
-                        upload.fileName(),
-                        upload.uploadedFileName(),
-                        upload.contentType())
-                .attribute("deviceId", "thisday-backend-" + userId)
-                .attribute("deviceAssetId", deviceAssetId)
-                .attribute("fileCreatedAt", Instant.now().toString())
-                .attribute("fileModifiedAt", Instant.now().toString());
+        Map<String, String> attributes = new LinkedHashMap<>();
+        attributes.put("deviceId", "thisday-backend-" + userId);
+        attributes.put("deviceAssetId", deviceAssetId);
+        attributes.put("fileCreatedAt", Instant.now().toString());
+        attributes.put("fileModifiedAt", Instant.now().toString());
+        return attributes;
     }
 
     private static void handleUpdateEntry(
@@ -349,7 +519,8 @@ public class EntryRoutes {
                 userId,
                 caption,
                 newMedia,
-                removeAssetIds
+                removeAssetIds,
+                storageSaver(ctx)
         ).onComplete(ar -> {
             if (ar.failed()) {
                 failWithMessage(ctx, ar.cause(), "Update entry failed");
@@ -1,11 +1,22 @@
 package com.thisday.routes;
 
 import com.thisday.auth.AuthHandler;
+import com.thisday.auth.MediaUrlSigner;
+import com.thisday.config.AppConfig;
+import com.thisday.media.ResizeSpec;
 import com.thisday.services.MediaService;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
 import io.vertx.ext.web.Router;
+import io.vertx.ext.web.RoutingContext;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
 public class MediaRoutes {
 
     private static final Logger log =
@@ -14,11 +25,69 @@ public class MediaRoutes {
     public static void mount(
             Router router,
             AuthHandler authHandler,
+            MediaUrlSigner mediaUrlSigner,
             MediaService mediaService
     ) {
 
-        // GET/HEAD Immich asset (thumbnail | preview | full)
+        // Batched metadata: { assetIds: [...] } → { items: [...] }
+        router.post("/api/media/immich/meta")
+                .handler(authHandler)
+                .handler(ctx -> {
+                    JsonObject body = ctx.body().asJsonObject();
+                    JsonArray rawIds = body == null ? null : body.getJsonArray("assetIds");
+
+                    if (rawIds == null) {
+                        badRequest(ctx, "assetIds must be an array");
+                        return;
+                    }
+
+                    Set<String> unique = new LinkedHashSet<>();
+                    for (Object value : rawIds) {
+                        if (value instanceof String id && !id.isBlank()) {
+                            unique.add(id);
+                        }
+                    }
+
+                    if (unique.size() > AppConfig.MEDIA_META_BATCH_MAX) {
+                        badRequest(ctx, "At most " + AppConfig.MEDIA_META_BATCH_MAX + " assetIds per request");
+                        return;
+                    }
+
+                    List<String> assetIds = new ArrayList<>(unique);
+                    log.info("Resolving Immich metadata count={}", assetIds.size());
+
+                    mediaService.describeAssets(assetIds).onComplete(ar -> {
+                        if (ar.failed()) {
+                            log.error("Media metadata lookup failed", ar.cause());
+                            ctx.response()
+                                    .setStatusCode(502)
+                                    .putHeader("Content-Type", "application/json")
+                                    .end(new JsonObject().put("error", "Metadata lookup failed").encode());
+                            return;
+                        }
+
+                        ctx.response()
+                                .setStatusCode(200)
+                                .putHeader("Content-Type", "application/json")
+                                .end(new JsonObject().put("items", ar.result()).encode());
+                    });
+                });
+
+        mountStreams(router, mediaUrlSigner, mediaService);
+    }
+
+    /**
+     * Just the byte-serving routes, for the dedicated media server.
+     */
+    public static void mountStreams(
+            Router router,
+            MediaUrlSigner mediaUrlSigner,
+            MediaService mediaService
+    ) {
+
+        // GET/HEAD Immich asset (thumbnail | preview | full, or w= / h= / fit= for a resized JPEG)
         router.get("/api/media/immich/:assetId")
+                .handler(mediaUrlSigner)
                 .handler(ctx -> {
 
                     String assetId = ctx.pathParam("assetId");
@@ -28,6 +97,23 @@ public class MediaRoutes {
                         type = "thumbnail";
                     }
 
+                    ResizeSpec resize;
+                    try {
+                        resize = resizeSpec(ctx);
+                    } catch (IllegalArgumentException e) {
+                        badRequest(ctx, e.getMessage());
+                        return;
+                    }
+
+                    if (resize != null) {
+                        log.info(
+                                "Fetching resized Immich asset assetId={} size={}",
+                                assetId, resize.key()
+                        );
+                        mediaService.streamResized(assetId, resize, ctx);
+                        return;
+                    }
+
                     log.info(
                             "Fetching Immich asset assetId={} type={}",
                             assetId, type
@@ -41,6 +127,7 @@ public class MediaRoutes {
                 });
 
         router.head("/api/media/immich/:assetId")
+                .handler(mediaUrlSigner)
                 .handler(ctx -> {
 
                     String assetId = ctx.pathParam("assetId");
@@ -50,6 +137,23 @@ public class MediaRoutes {
                         type = "thumbnail";
                     }
 
+                    ResizeSpec resize;
+                    try {
+                        resize = resizeSpec(ctx);
+                    } catch (IllegalArgumentException e) {
+                        badRequest(ctx, e.getMessage());
+                        return;
+                    }
+
+                    if (resize != null) {
+                        log.info(
+                                "Fetching resized Immich asset assetId={} size={}",
+                                assetId, resize.key()
+                        );
+                        mediaService.streamResized(assetId, resize, ctx);
+                        return;
+                    }
+
                     log.info(
                             "Fetching Immich asset assetId={} type={}",
                             assetId, type
@@ -62,4 +166,19 @@ public class MediaRoutes {
                     );
                 });
     }
+
+    private static ResizeSpec resizeSpec(RoutingContext ctx) {
+        return ResizeSpec.parse(
+                ctx.request().getParam("w"),
+                ctx.request().getParam("h"),
+                ctx.request().getParam("fit")
+        );
+    }
+
+    private static void badRequest(RoutingContext ctx, String message) {
+        ctx.response()
+                .setStatusCode(400)
+                .putHeader("Content-Type", "application/json")
+                .end(new JsonObject().put("error", message).encode());
+    }
 }
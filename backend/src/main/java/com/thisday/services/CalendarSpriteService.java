@@ -0,0 +1,299 @@
+package com.thisday.services;
+
+import com.thisday.auth.MediaUrlSigner;
+import com.thisday.config.AppConfig;
+import com.thisday.immich.ImmichTransport.Dispatch;
+import com.thisday.media.ImageResizer;
+import com.thisday.media.ResizeSpec;
+import io.vertx.core.Future;
+import io.vertx.core.Promise;
+import io.vertx.core.Vertx;
+import io.vertx.core.WorkerExecutor;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.web.RoutingContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.imageio.ImageIO;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * One JPEG per (user, month) holding every day's calendar tile, plus a JSON
+ * map of where each day sits in it, so the month grid is one image request
+ * instead of up to 31.
+ * <p>
+ * A sprite's version is a hash of the month's (date, asset) list, so any
+ * entry change for the month yields a new version and URL. The previous
+ * version is dropped from the cache the first time the new one is served.
+ */
+public class CalendarSpriteService {
+
+    private static final Logger log =
+            LoggerFactory.getLogger(CalendarSpriteService.class);
+
+    private static final int COLUMNS = 7;
+    private static final int MAX_TRACKED_MONTHS = 5_000;
+    private static final String DEFAULT_TILE_SIZE = "128";
+    private static final int MAX_TILE_SIZE = 256;
+    // a sprite with blank tiles is dropped after this long so it gets rebuilt
+    private static final long PARTIAL_SPRITE_RETRY_MS = 60_000;
+
+    private final Vertx vertx;
+    private final EntryReadService entryReadService;
+    private final MediaService mediaService;
+    private final MediaUrlSigner mediaUrlSigner;
+    private final WorkerExecutor imageWorkers;
+
+    // user:yyyy-mm:edge → sprite version currently served for it
+    private final Map<String, String> currentVersions = new LinkedHashMap<>(256, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+            return size() > MAX_TRACKED_MONTHS;
+        }
+    };
+    private final ConcurrentHashMap<String, Future<Void>> builds = new ConcurrentHashMap<>();
+
+    public CalendarSpriteService(
+            Vertx vertx,
+            EntryReadService entryReadService,
+            MediaService mediaService,
+            MediaUrlSigner mediaUrlSigner
+    ) {
+        this.vertx = vertx;
+        this.entryReadService = entryReadService;
+        this.mediaService = mediaService;
+        this.mediaUrlSigner = mediaUrlSigner;
+        this.imageWorkers = vertx.createSharedWorkerExecutor("media-image", AppConfig.MEDIA_IMAGE_WORKERS);
+    }
+
+    /**
+     * Builds (or reuses) the month's sprite and returns its manifest:
+     * {@code { version, url, tileSize, columns, width, height, tiles: { date: { x, y, assetId } } }}.
+     * {@code url} is {@code null} when the month has no media.
+     */
+    public Future<JsonObject> getSprite(String userId, int year, int month, String size) {
+        ResizeSpec spec = ResizeSpec.parse(size == null ? DEFAULT_TILE_SIZE : size, null, null);
+        int requested = spec.width;
+        if (requested > MAX_TILE_SIZE) {
+            return Future.failedFuture("Invalid size: " + size);
+        }
+        ResizeSpec tileSpec = ResizeSpec.parse(String.valueOf(requested), String.valueOf(requested), "cover");
+
+        return entryReadService.getCalendarEntries(userId, year, month).compose(entries -> {
+            List<Tile> tiles = tilesOf(entries);
+            String version = version(userId, year, month, tileSpec.width, tiles);
+            String url = tiles.isEmpty() ? null : mediaUrlSigner.signSprite(version, userId);
+            JsonObject manifest = manifest(version, url, tileSpec.width, tiles);
+
+            if (tiles.isEmpty()) {
+                return Future.succeededFuture(manifest);
+            }
+
+            String key = spriteKey(version);
+            retirePrevious(userId + ":" + String.format("%04d-%02d", year, month) + ":" + tileSpec.width, version);
+
+            if (mediaService.hasGenerated(key)) {
+                return Future.succeededFuture(manifest);
+            }
+            return build(key, version, tileSpec, tiles, Dispatch.interactive(userId)).map(v -> manifest);
+        });
+    }
+
+    /**
+     * Serves a sprite image. The route checks the URL's signature first,
+     * exactly like asset URLs; versions are unguessable content hashes on
+     * top of that.
+     */
+    public void serveSprite(String version, RoutingContext ctx) {
+        if (version == null || !version.matches("[0-9a-f]{32}")) {
+            ctx.response().setStatusCode(404).end();
+            return;
+        }
+        mediaService.serveGenerated(spriteKey(version), ctx);
+    }
+
+    /*
+     * ============================================================
+     * Building
+     * ============================================================
+     */
+    private Future<Void> build(
+            String key,
+            String version,
+            ResizeSpec tileSpec,
+            List<Tile> tiles,
+            Dispatch dispatch
+    ) {
+        Promise<Void> promise = Promise.promise();
+        Future<Void> existing = builds.putIfAbsent(key, promise.future());
+        if (existing != null) {
+            return existing;
+        }
+
+        List<Future<Buffer>> renditions = new ArrayList<>();
+        for (Tile tile : tiles) {
+            renditions.add(mediaService.loadRendition(tile.assetId, tileSpec, dispatch));
+        }
+
+        long startedAt = System.currentTimeMillis();
+
+        // One missing or broken tile leaves a blank square, not a failed month.
+        Future.join(renditions)
+                .recover(err -> Future.succeededFuture())
+                .compose(all -> {
+                    long missing = renditions.stream().filter(Future::failed).count();
+                    if (missing == tiles.size()) {
+                        return Future.failedFuture(renditions.get(0).cause());
+                    }
+                    if (missing > 0) {
+                        log.warn("Calendar sprite has blank tiles [version={}, missing={}]", version, missing);
+                        vertx.setTimer(PARTIAL_SPRITE_RETRY_MS, id -> mediaService.invalidateGenerated(key));
+                    }
+                    return imageWorkers.executeBlocking(
+                            () -> compose(tileSpec.width, tiles, renditions),
+                            false
+                    );
+                })
+                .compose(jpeg -> mediaService.storeGenerated(
+                        key,
+                        "image/jpeg",
+                        "\"sprite-" + version + "\"",
+                        Buffer.buffer(jpeg)
+                ))
+                .onComplete(ar -> {
+                    builds.remove(key);
+                    if (ar.succeeded()) {
+                        log.info("Calendar sprite built [version={}, tiles={}, duration={}ms]",
+                                version, tiles.size(), System.currentTimeMillis() - startedAt);
+                    } else {
+                        log.warn("Calendar sprite build failed [version={}]", version, ar.cause());
+                    }
+                    promise.handle(ar);
+                });
+
+        return promise.future();
+    }
+
+    private static byte[] compose(int edge, List<Tile> tiles, List<Future<Buffer>> renditions) throws Exception {
+        int rows = (tiles.size() + COLUMNS - 1) / COLUMNS;
+        int columns = Math.min(COLUMNS, tiles.size());
+        BufferedImage sprite = new BufferedImage(columns * edge, rows * edge, BufferedImage.TYPE_INT_RGB);
+
+        Graphics2D g = sprite.createGraphics();
+        try {
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            g.setColor(Color.WHITE);
+            g.fillRect(0, 0, sprite.getWidth(), sprite.getHeight());
+
+            for (int i = 0; i < tiles.size(); i++) {
+                BufferedImage tile = decode(renditions.get(i));
+                if (tile != null) {
+                    // renditions are never upscaled, so small sources are stretched here
+                    g.drawImage(tile, (i % COLUMNS) * edge, (i / COLUMNS) * edge, edge, edge, null);
+                }
+            }
+        } finally {
+            g.dispose();
+        }
+
+        return ImageResizer.encodeJpeg(sprite, AppConfig.MEDIA_RESIZE_JPEG_QUALITY / 100f);
+    }
+
+    private static BufferedImage decode(Future<Buffer> rendition) {
+        if (rendition.failed()) {
+            return null;
+        }
+        try {
+            return ImageIO.read(new ByteArrayInputStream(rendition.result().getBytes()));
+        } catch (IOException e) {
+            log.debug("Undecodable sprite tile: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    private void retirePrevious(String monthKey, String version) {
+        String previous;
+        synchronized (this) {
+            previous = currentVersions.put(monthKey, version);
+        }
+        if (previous != null && !previous.equals(version)) {
+            log.debug("Calendar month changed, dropping sprite [month={}, version={}]", monthKey, previous);
+            mediaService.invalidateGenerated(spriteKey(previous));
+        }
+    }
+
+    /*
+     * ============================================================
+     * Helpers
+     * ============================================================
+     */
+    private static List<Tile> tilesOf(JsonArray entries) {
+        List<Tile> tiles = new ArrayList<>();
+        for (int i = 0; i < entries.size(); i++) {
+            JsonObject entry = entries.getJsonObject(i);
+            String assetId = entry.getString("immichAssetId");
+            String date = entry.getString("date");
+            if (assetId != null && date != null) {
+                tiles.add(new Tile(date, assetId));
+            }
+        }
+        tiles.sort(Comparator.comparing(Tile::date));
+        return tiles;
+    }
+
+    private static JsonObject manifest(String version, String url, int edge, List<Tile> tiles) {
+        JsonObject positions = new JsonObject();
+        for (int i = 0; i < tiles.size(); i++) {
+            Tile tile = tiles.get(i);
+            positions.put(tile.date, new JsonObject()
+                    .put("x", (i % COLUMNS) * edge)
+                    .put("y", (i / COLUMNS) * edge)
+                    .put("assetId", tile.assetId));
+        }
+
+        int rows = (tiles.size() + COLUMNS - 1) / COLUMNS;
+        return new JsonObject()
+                .put("version", version)
+                .put("url", url)
+                .put("tileSize", edge)
+                .put("columns", COLUMNS)
+                .put("width", Math.min(COLUMNS, tiles.size()) * edge)
+                .put("height", rows * edge)
+                .put("tiles", positions);
+    }
+
+    private static String version(String userId, int year, int month, int edge, List<Tile> tiles) {
+        StringBuilder source = new StringBuilder()
+                .append(userId).append('|')
+                .append(year).append('-').append(month).append('|')
+                .append(edge);
+        for (Tile tile : tiles) {
+            source.append('|').append(tile.date).append('=').append(tile.assetId);
+        }
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256")
+                    .digest(source.toString().getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest, 0, 16);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String spriteKey(String version) {
+        return "sprite:" + version;
+    }
+
+    private record Tile(String date, String assetId) {
+    }
+}
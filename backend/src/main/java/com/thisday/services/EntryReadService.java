@@ -1,9 +1,11 @@
 package com.thisday.services;
 
+import com.thisday.auth.MediaUrlSigner;
 import com.thisday.repositories.EntryReadRepository;
 import io.vertx.core.Future;
 import io.vertx.core.Vertx;
 import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -13,9 +15,13 @@ public class EntryReadService {
             LoggerFactory.getLogger(EntryReadService.class);
 
     private final EntryReadRepository repository;
+    private final MediaWarmer mediaWarmer;
+    private final MediaUrlSigner mediaUrlSigner;
 
-    public EntryReadService(Vertx vertx) {
+    public EntryReadService(Vertx vertx, MediaWarmer mediaWarmer, MediaUrlSigner mediaUrlSigner) {
         this.repository = new EntryReadRepository(vertx);
+        this.mediaWarmer = mediaWarmer;
+        this.mediaUrlSigner = mediaUrlSigner;
     }
 
     public Future<JsonArray> getEntriesForDay(
@@ -29,7 +35,8 @@ public class EntryReadService {
                 userId, year, month, day
         );
 
-        return repository.findByExactDay(userId, year, month, day);
+        return repository.findByExactDay(userId, year, month, day)
+                .map(entries -> withMediaUrls(userId, entries));
     }
 
     public Future<JsonArray> getSameDayPreviousMonths(
@@ -43,7 +50,9 @@ public class EntryReadService {
                 userId, year, month, day
         );
 
-        return repository.findSameDayPreviousMonths(userId, year, month, day);
+        return repository.findSameDayPreviousMonths(userId, year, month, day)
+                .onSuccess(mediaWarmer::warmFrom)
+                .map(entries -> withMediaUrls(userId, entries));
     }
 
     public Future<JsonArray> getSameDayPreviousYears(
@@ -57,7 +66,9 @@ public class EntryReadService {
                 userId, month, day
         );
 
-        return repository.findSameDayBestEntriesPerYear(userId, year, month, day);
+        return repository.findSameDayBestEntriesPerYear(userId, year, month, day)
+                .onSuccess(mediaWarmer::warmFrom)
+                .map(entries -> withMediaUrls(userId, entries));
     }
 
     public Future<JsonArray> getTodaySummary(
@@ -71,7 +82,9 @@ public class EntryReadService {
                 userId, year, month, day
         );
 
-        return repository.findTodaySummary(userId, year, month, day);
+        return repository.findTodaySummary(userId, year, month, day)
+                .onSuccess(mediaWarmer::warmFrom)
+                .map(entries -> withMediaUrls(userId, entries));
     }
 
     public Future<JsonArray> getCalendarEntries(
@@ -84,6 +97,35 @@ public class EntryReadService {
                 userId, year, month
         );
 
-        return repository.findCalendarEntries(userId, year, month);
+        return repository.findCalendarEntries(userId, year, month)
+                .onSuccess(mediaWarmer::warmFrom)
+                .map(entries -> withMediaUrls(userId, entries));
+    }
+
+    /**
+     * Adds signed media URLs: {@code mediaUrls} (assetId → URL) on entries,
+     * {@code mediaUrl} on calendar rows.
+     */
+    private JsonArray withMediaUrls(String userId, JsonArray entries) {
+        for (Object value : entries) {
+            if (!(value instanceof JsonObject entry)) {
+                continue;
+            }
+            String single = entry.getString("immichAssetId");
+            if (single != null) {
+                entry.put("mediaUrl", mediaUrlSigner.sign(single, userId));
+            }
+            JsonArray many = entry.getJsonArray("immichAssetIds");
+            if (many != null) {
+                JsonObject urls = new JsonObject();
+                for (Object id : many) {
+                    if (id instanceof String assetId) {
+                        urls.put(assetId, mediaUrlSigner.sign(assetId, userId));
+                    }
+                }
+                entry.put("mediaUrls", urls);
+            }
+        }
+        return entries;
     }
 }
@@ -1,10 +1,17 @@
 package com.thisday.services;
 
+import com.thisday.config.AppConfig;
 import com.thisday.immich.ImmichClient;
+import com.thisday.media.SniffingReadStream;
 import com.thisday.models.Entry;
 import com.thisday.repositories.EntryRepository;
 import io.vertx.core.Future;
+import io.vertx.core.Promise;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
+import io.vertx.core.streams.ReadStream;
+import io.vertx.ext.web.multipart.FormDataPart;
 import io.vertx.ext.web.multipart.MultipartForm;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -13,35 +20,52 @@ import java.time.Instant;
 import java.time.LocalDate;
 import java.time.ZoneId;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 public class EntryService {
 
     private static final Logger log = LoggerFactory.getLogger(EntryService.class);
     private static final ZoneId IST = ZoneId.of("Asia/Kolkata");
+    // enough of a streamed file's head to hold EXIF and the image header
+    private static final int STREAM_PROBE_BYTES = 256 * 1024;
 
     private final ImmichClient immichClient;
     private final EntryRepository entryRepository;
+    private final MediaProbeService mediaProbeService;
+    private final ThumbnailPregenerator thumbnailPregenerator;
+    private final StorageSaverService storageSaverService;
 
     public EntryService(
             ImmichClient immichClient,
-            EntryRepository entryRepository) {
+            EntryRepository entryRepository,
+            MediaProbeService mediaProbeService,
+            ThumbnailPregenerator thumbnailPregenerator,
+            StorageSaverService storageSaverService) {
         this.immichClient = immichClient;
         this.entryRepository = entryRepository;
+        this.mediaProbeService = mediaProbeService;
+        this.thumbnailPregenerator = thumbnailPregenerator;
+        this.storageSaverService = storageSaverService;
     }
 
     // CREATE
     public Future<Void> createEntry(
             String userId,
             String caption,
-            List<MultipartForm> media) {
-        return uploadAssets(media, new ArrayList<>()).compose(assetIds -> {
+            List<MultipartForm> media,
+            boolean storageSaver) {
+        return uploadAssets(media, userId, storageSaver).compose(uploaded -> {
             LocalDate todayIst = LocalDate.now(IST);
+            List<String> assetIds = uploaded.assetIds;
 
             Entry entry = new Entry();
             entry.userId = userId;
             entry.caption = caption;
             entry.immichAssetIds = assetIds;
+            entry.media = uploaded.media;
+            entry.placeholders = uploaded.placeholders;
             entry.uploadedClientMediaIds = new ArrayList<>();
             entry.date = todayIst;
             entry.dayMonth = String.format(
@@ -61,18 +85,23 @@ public class EntryService {
             String userId,
             LocalDate date,
             String caption,
-            List<MultipartForm> media) {
+            List<MultipartForm> media,
+            boolean storageSaver) {
         LocalDate todayIst = LocalDate.now(IST);
 
         if (date.isAfter(todayIst)) {
             return Future.failedFuture("Cannot create entry for a future date");
         }
 
-        return uploadAssets(media, new ArrayList<>()).compose(assetIds -> {
+        return uploadAssets(media, userId, storageSaver).compose(uploaded -> {
+            List<String> assetIds = uploaded.assetIds;
+
             Entry entry = new Entry();
             entry.userId = userId;
             entry.caption = caption;
             entry.immichAssetIds = assetIds;
+            entry.media = uploaded.media;
+            entry.placeholders = uploaded.placeholders;
             entry.uploadedClientMediaIds = new ArrayList<>();
             entry.date = date;
             entry.dayMonth = String.format(
@@ -125,7 +154,62 @@ public class EntryService {
             String entryId,
             String userId,
             MultipartForm media,
+            String clientMediaId,
+            boolean storageSaver
+    ) {
+        String normalizedClientMediaId =
+                clientMediaId == null ? "" : clientMediaId.trim();
+
+        return checkPendingUpload(entryId, userId, normalizedClientMediaId).compose(existing -> {
+            if (existing != null) {
+                return Future.succeededFuture(existing);
+            }
+
+            return upload(media, userId, storageSaver, null).compose(asset -> asset.probe.compose(probed ->
+                    appendPendingUpload(entryId, userId, asset.assetId, probed, normalizedClientMediaId)));
+        });
+    }
+
+    /**
+     * {@link #uploadPendingEntryMedia} for a file that is piped to Immich as
+     * it arrives instead of being spooled to disk first. {@code data} must be
+     * paused; it is left paused (for the caller to drain) when the upload is
+     * rejected or deduplicated before it starts.
+     */
+    public Future<JsonObject> uploadPendingEntryMediaStream(
+            String entryId,
+            String userId,
+            ReadStream<Buffer> data,
+            String filename,
+            String contentType,
+            Map<String, String> attributes,
             String clientMediaId
+    ) {
+        String normalizedClientMediaId =
+                clientMediaId == null ? "" : clientMediaId.trim();
+
+        return checkPendingUpload(entryId, userId, normalizedClientMediaId).compose(existing -> {
+            if (existing != null) {
+                return Future.succeededFuture(existing);
+            }
+
+            SniffingReadStream sniffed = new SniffingReadStream(data, STREAM_PROBE_BYTES);
+            return immichClient.uploadAssetStream(sniffed, filename, contentType, attributes, userId)
+                    .compose(assetId -> mediaProbeService.probeHead(contentType, sniffed.length(), sniffed.head())
+                            .compose(probed ->
+                                    appendPendingUpload(entryId, userId, assetId, probed, normalizedClientMediaId)));
+        });
+    }
+
+    /**
+     * Completes with the response for an upload that already happened (same
+     * client media ID), {@code null} when the upload may go ahead, or fails
+     * when the entry cannot take it.
+     */
+    private Future<JsonObject> checkPendingUpload(
+            String entryId,
+            String userId,
+            String normalizedClientMediaId
     ) {
         return entryRepository.findById(entryId, userId).compose(entry -> {
             if (entry == null) {
@@ -134,8 +218,6 @@ public class EntryService {
             if (!Entry.STATUS_PENDING.equals(entry.status)) {
                 return Future.failedFuture("Entry is not pending");
             }
-            String normalizedClientMediaId =
-                    clientMediaId == null ? "" : clientMediaId.trim();
 
             if (!normalizedClientMediaId.isBlank()) {
                 String existingAssetId =
@@ -153,22 +235,35 @@ public class EntryService {
                 return Future.failedFuture("Upload limit reached for this entry");
             }
 
-            return immichClient.uploadAsset(media).compose(assetId ->
-                    entryRepository.appendUploadedAsset(
-                                    entryId,
-                                    userId,
-                                    assetId,
-                                    normalizedClientMediaId)
-                            .map(updated ->
-                            new JsonObject()
-                                    .put("assetId", assetId)
-                                    .put("uploadedMediaCount", updated.uploadedMediaCount)
-                                    .put("expectedMediaCount", updated.expectedMediaCount)
-                                    .put("deduplicated", false)
-                    ));
+            return Future.succeededFuture();
         });
     }
 
+    private Future<JsonObject> appendPendingUpload(
+            String entryId,
+            String userId,
+            String assetId,
+            MediaProbeService.Probe probed,
+            String normalizedClientMediaId
+    ) {
+        probed.media().assetId = assetId;
+        thumbnailPregenerator.schedule(List.of(assetId));
+        return entryRepository.appendUploadedAsset(
+                        entryId,
+                        userId,
+                        probed.media(),
+                        probed.placeholder(),
+                        normalizedClientMediaId)
+                .map(updated ->
+                        new JsonObject()
+                                .put("assetId", assetId)
+                                .put("uploadedMediaCount", updated.uploadedMediaCount)
+                                .put("expectedMediaCount", updated.expectedMediaCount)
+                                .put("media", probed.media().toJson())
+                                .put("deduplicated", false)
+                );
+    }
+
     public Future<Void> finalizePendingEntry(
             String entryId,
             String userId
@@ -200,13 +295,16 @@ public class EntryService {
             String userId,
             String caption,
             List<MultipartForm> newMedia,
-            List<String> removeAssetIds) {
-        return uploadAssets(newMedia, new ArrayList<>()).compose(assetIds ->
+            List<String> removeAssetIds,
+            boolean storageSaver) {
+        return uploadAssets(newMedia, userId, storageSaver).compose(uploaded ->
                 entryRepository.updateEntry(
                         entryId,
                         userId,
                         caption,
-                        assetIds,
+                        uploaded.assetIds,
+                        uploaded.media,
+                        uploaded.placeholders,
                         removeAssetIds
                 )
         );
@@ -228,21 +326,237 @@ public class EntryService {
         });
     }
 
-    private Future<List<String>> uploadAssets(
+    /**
+     * Uploads {@code forms} with up to {@code MEDIA_UPLOAD_PARALLELISM} in
+     * flight. Results keep the order of {@code forms} however the uploads
+     * finish. The first failure cancels the uploads still running, no new
+     * one starts, and the assets already created are deleted again before
+     * the batch fails with an {@link UploadBatchException} that reports
+     * what happened to each file.
+     */
+    private Future<Uploaded> uploadAssets(
             List<MultipartForm> forms,
-            List<String> assetIds) {
+            String userId,
+            boolean storageSaver) {
         if (forms.isEmpty()) {
-            return Future.succeededFuture(assetIds);
+            return Future.succeededFuture(new Uploaded());
+        }
+        return new UploadBatch(forms, userId, storageSaver).start();
+    }
+
+    /**
+     * A failed upload batch. The message is the first error's, so it maps
+     * to a status like any other failure; {@link #files()} has one
+     * {@code {file, status, error?}} object per form, in order, with status
+     * {@code failed}, {@code cancelled}, {@code skipped}, {@code removed}
+     * (uploaded, then trashed), {@code orphaned} (uploaded, trashing failed)
+     * or {@code duplicate} (Immich already had it, so it was left alone).
+     */
+    public static final class UploadBatchException extends RuntimeException {
+
+        private static final long serialVersionUID = 1L;
+
+        private final transient JsonArray files;
+
+        UploadBatchException(Throwable cause, JsonArray files) {
+            super(cause.getMessage(), cause, false, false);
+            this.files = files;
+        }
+
+        public JsonArray files() {
+            return files;
+        }
+    }
+
+    private final class UploadBatch {
+
+        private final List<MultipartForm> forms;
+        private final String userId;
+        private final boolean storageSaver;
+        private final String[] assetIds;
+        // whether Immich created assetIds[i] for us rather than matching an existing asset
+        private final boolean[] created;
+        private final MediaProbeService.Probe[] probes;
+        private final Throwable[] errors;
+        private final Promise<Uploaded> promise = Promise.promise();
+        // completed on the first failure; cancels the uploads still in flight
+        private final Promise<Void> abort = Promise.promise();
+
+        private int next;
+        private int running;
+        private Throwable failure;
+
+        UploadBatch(List<MultipartForm> forms, String userId, boolean storageSaver) {
+            this.forms = forms;
+            this.userId = userId;
+            this.storageSaver = storageSaver;
+            this.assetIds = new String[forms.size()];
+            this.created = new boolean[forms.size()];
+            this.probes = new MediaProbeService.Probe[forms.size()];
+            this.errors = new Throwable[forms.size()];
+        }
+
+        Future<Uploaded> start() {
+            fill();
+            return promise.future();
+        }
+
+        private void fill() {
+            while (true) {
+                int index;
+                synchronized (this) {
+                    if (failure != null
+                            || next >= forms.size()
+                            || running >= Math.max(1, AppConfig.MEDIA_UPLOAD_PARALLELISM)) {
+                        return;
+                    }
+                    index = next++;
+                    running++;
+                }
+
+                upload(forms.get(index), userId, storageSaver, abort.future())
+                        .compose(asset -> {
+                            synchronized (this) {
+                                assetIds[index] = asset.assetId;
+                                created[index] = asset.created;
+                            }
+                            return asset.probe;
+                        })
+                        .onSuccess(probed -> {
+                            synchronized (this) {
+                                probed.media().assetId = assetIds[index];
+                                probes[index] = probed;
+                            }
+                        })
+                        .onComplete(ar -> finished(index, ar.cause()));
+            }
         }
 
-        MultipartForm form = forms.remove(0);
+        private void finished(int index, Throwable cause) {
+            boolean done;
+            boolean first = false;
+            synchronized (this) {
+                running--;
+                if (cause != null) {
+                    errors[index] = cause;
+                    if (failure == null) {
+                        failure = cause;
+                        first = true;
+                    }
+                }
+                done = running == 0 && (failure != null || next >= forms.size());
+            }
 
-        return immichClient.uploadAsset(form).compose(assetId -> {
-            assetIds.add(assetId);
-            return uploadAssets(forms, assetIds);
+            if (cause != null && first) {
+                log.warn("Upload {} of {} failed: {}", index + 1, forms.size(), cause.getMessage());
+                abort.tryComplete();
+            }
+            if (done) {
+                complete();
+            } else {
+                fill();
+            }
+        }
+
+        private void complete() {
+            if (failure != null) {
+                rollBack();
+                return;
+            }
+
+            Uploaded uploaded = new Uploaded();
+            for (int i = 0; i < assetIds.length; i++) {
+                uploaded.assetIds.add(assetIds[i]);
+                uploaded.media.add(probes[i].media());
+                if (probes[i].placeholder() != null) {
+                    uploaded.placeholders.put(assetIds[i], probes[i].placeholder());
+                }
+            }
+            thumbnailPregenerator.schedule(uploaded.assetIds);
+            promise.complete(uploaded);
+        }
+
+        /**
+         * Trashes the assets this batch created in Immich, then fails with
+         * the per-file outcome. Duplicates are left alone: Immich handed back
+         * an asset that something else may already reference.
+         */
+        private void rollBack() {
+            List<String> createdIds = new ArrayList<>();
+            for (int i = 0; i < assetIds.length; i++) {
+                if (assetIds[i] != null && created[i] && !createdIds.contains(assetIds[i])) {
+                    createdIds.add(assetIds[i]);
+                }
+            }
+            immichClient.deleteAssets(createdIds).onComplete(deleted -> {
+                if (deleted.failed()) {
+                    log.warn("Upload batch failed; {} asset(s) already in Immich could not be trashed: {}",
+                            createdIds.size(), deleted.cause().getMessage());
+                }
+
+                JsonArray files = new JsonArray();
+                for (int i = 0; i < forms.size(); i++) {
+                    JsonObject file = new JsonObject().put("file", fileNameOf(forms.get(i)));
+                    if (assetIds[i] != null) {
+                        file.put("status", !created[i] ? "duplicate" : deleted.succeeded() ? "removed" : "orphaned");
+                        if (errors[i] != null) {
+                            file.put("error", errors[i].getMessage());
+                        }
+                    } else if (errors[i] == null) {
+                        file.put("status", "skipped");
+                    } else if (errors[i] == failure) {
+                        file.put("status", "failed").put("error", failure.getMessage());
+                    } else {
+                        file.put("status", "cancelled");
+                    }
+                    files.add(file);
+                }
+                promise.fail(new UploadBatchException(failure, files));
+            });
+        }
+    }
+
+    /**
+     * Uploads one file, shrunk first in storage-saver mode. The file that is
+     * actually sent is probed on a worker while Immich receives it. When
+     * {@code abandon} (may be {@code null}) completes first, the upload is
+     * cancelled.
+     */
+    private Future<UploadedAsset> upload(
+            MultipartForm form,
+            String userId,
+            boolean storageSaver,
+            Future<Void> abandon) {
+        Future<MultipartForm> prepared = storageSaver
+                ? storageSaverService.shrink(form)
+                : Future.succeededFuture(form);
+
+        return prepared.compose(upload -> {
+            Future<MediaProbeService.Probe> probe = mediaProbeService.probe(upload);
+            Future<ImmichClient.Upload> uploaded = immichClient.uploadAsset(upload, userId, abandon);
+            Future.join(uploaded, probe).onComplete(ar -> storageSaverService.release(upload));
+            return uploaded.map(result -> new UploadedAsset(result.assetId(), result.created(), probe));
         });
     }
 
+    private static String fileNameOf(MultipartForm form) {
+        for (FormDataPart part : form) {
+            if (!part.isAttribute()) {
+                return part.filename();
+            }
+        }
+        return null;
+    }
+
+    private record UploadedAsset(String assetId, boolean created, Future<MediaProbeService.Probe> probe) {
+    }
+
+    private static final class Uploaded {
+        final List<String> assetIds = new ArrayList<>();
+        final List<Entry.Media> media = new ArrayList<>();
+        final Map<String, String> placeholders = new LinkedHashMap<>();
+    }
+
     private String findExistingAssetForClientMediaId(
             Entry entry,
             String clientMediaId
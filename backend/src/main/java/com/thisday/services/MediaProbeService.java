@@ -0,0 +1,123 @@
+package com.thisday.services;
+
+import com.thisday.config.AppConfig;
+import com.thisday.media.ImageResizer;
+import com.thisday.models.Entry;
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import io.vertx.core.WorkerExecutor;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.ext.web.multipart.FormDataPart;
+import io.vertx.ext.web.multipart.MultipartForm;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.util.Base64;
+
+/**
+ * Looks at an uploaded file before it goes to Immich: its type, size and
+ * upright dimensions, plus a low-quality placeholder (a JPEG of about 16px
+ * on its longest edge, as a {@code data:} URI) the UI can paint before the
+ * real thumbnail arrives.
+ * <p>
+ * Everything comes from the uploaded file itself, so it costs Immich nothing
+ * and is known before Immich has processed the asset.
+ */
+public class MediaProbeService {
+
+    private static final Logger log =
+            LoggerFactory.getLogger(MediaProbeService.class);
+
+    private static final float PLACEHOLDER_QUALITY = 0.5f;
+
+    private final WorkerExecutor imageWorkers;
+
+    public MediaProbeService(Vertx vertx) {
+        this.imageWorkers = vertx.createSharedWorkerExecutor("media-image", AppConfig.MEDIA_IMAGE_WORKERS);
+    }
+
+    /**
+     * Probes the file in {@code form}. Never fails: whatever cannot be
+     * learned (dimensions of a video, a placeholder for HEIC) is left empty,
+     * since a probe must not fail an upload. A file sent as neither image/*
+     * nor video/* stays {@code UNKNOWN} unless it decodes as an image.
+     */
+    public Future<Probe> probe(MultipartForm form) {
+        FormDataPart file = null;
+        for (FormDataPart part : form) {
+            if (!part.isAttribute() && part.pathname() != null) {
+                file = part;
+                break;
+            }
+        }
+
+        Entry.Media media = new Entry.Media();
+        if (file == null) {
+            return Future.succeededFuture(new Probe(media, null));
+        }
+
+        File source = new File(file.pathname());
+        media.contentType = file.mediaType();
+        media.type = Entry.Media.typeOf(media.contentType);
+        media.size = source.length();
+
+        if (Entry.Media.TYPE_VIDEO.equals(media.type)) {
+            return Future.succeededFuture(new Probe(media, null));
+        }
+
+        int edge = AppConfig.MEDIA_PLACEHOLDERS_ENABLED ? AppConfig.MEDIA_PLACEHOLDER_EDGE : 0;
+
+        return imageWorkers.<Probe>executeBlocking(() -> {
+            ImageResizer.Probe image = ImageResizer.probe(source, edge, PLACEHOLDER_QUALITY);
+            if (image == null) {
+                return new Probe(media, null);
+            }
+            media.type = Entry.Media.TYPE_IMAGE;
+            media.width = image.width();
+            media.height = image.height();
+            String placeholder = image.placeholder() == null
+                    ? null
+                    : "data:image/jpeg;base64," + Base64.getEncoder().encodeToString(image.placeholder());
+            return new Probe(media, placeholder);
+        }, false).otherwise(err -> {
+            log.debug("Probe failed for {}: {}", source.getName(), err.getMessage());
+            return new Probe(media, null);
+        });
+    }
+
+    /**
+     * Probes a streamed upload from its first bytes: dimensions when the head
+     * holds them, never a placeholder. Never fails.
+     */
+    public Future<Probe> probeHead(String contentType, long size, Buffer head) {
+        Entry.Media media = new Entry.Media();
+        media.contentType = contentType;
+        media.type = Entry.Media.typeOf(contentType);
+        media.size = size;
+
+        if (Entry.Media.TYPE_VIDEO.equals(media.type) || head.length() == 0) {
+            return Future.succeededFuture(new Probe(media, null));
+        }
+
+        return imageWorkers.<Probe>executeBlocking(() -> {
+            ImageResizer.Probe image = ImageResizer.probeHead(head.getBytes());
+            if (image != null) {
+                media.type = Entry.Media.TYPE_IMAGE;
+                media.width = image.width();
+                media.height = image.height();
+            }
+            return new Probe(media, null);
+        }, false).otherwise(err -> {
+            log.debug("Head probe failed: {}", err.getMessage());
+            return new Probe(media, null);
+        });
+    }
+
+    /**
+     * @param media       descriptor without its asset ID, which only Immich assigns
+     * @param placeholder {@code data:} URI, or {@code null}
+     */
+    public record Probe(Entry.Media media, String placeholder) {
+    }
+}
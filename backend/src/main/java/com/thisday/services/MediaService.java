@@ -1,20 +1,123 @@
 package com.thisday.services;
 
+import com.thisday.auth.MediaUrlSigner;
+import com.thisday.config.AppConfig;
 import com.thisday.immich.ImmichClient;
+import com.thisday.immich.ImmichTransport;
+import com.thisday.immich.ImmichTransport.Dispatch;
+import com.thisday.media.ByteRange;
+import com.thisday.media.FanOutWriteStream;
+import com.thisday.media.ImageResizer;
+import com.thisday.media.MediaBlockCache;
+import com.thisday.media.MediaCacheEntry;
+import com.thisday.media.MediaCacheWriter;
+import com.thisday.media.MediaDiskCache;
+import com.thisday.media.MediaMemoryCache;
+import com.thisday.media.MediaMemoryFill;
+import com.thisday.media.MediaMetadataCache;
+import com.thisday.media.NettyBuffers;
+import com.thisday.media.ResizeSpec;
+import io.vertx.core.Future;
+import io.vertx.core.MultiMap;
+import io.vertx.core.Promise;
 import io.vertx.core.Vertx;
+import io.vertx.core.WorkerExecutor;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.file.AsyncFile;
+import io.vertx.core.file.OpenOptions;
+import io.vertx.core.http.HttpClientResponse;
+import io.vertx.core.http.HttpMethod;
+import io.vertx.core.http.HttpServerResponse;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.net.SocketAddress;
+import io.vertx.core.streams.WriteStream;
 import io.vertx.ext.web.RoutingContext;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
 public class MediaService {
 
     private static final Logger log =
             LoggerFactory.getLogger(MediaService.class);
 
+    // Sketch frequency a disk hit needs before it is copied into memory.
+    private static final int MEMORY_PROMOTION_FREQUENCY = 2;
+
+    // Longest edge of Immich's "thumbnail" size; larger renditions start from the preview.
+    private static final int THUMBNAIL_EDGE = 250;
+
+    private static final Set<String> TRUSTED_PROXIES = Arrays.stream(AppConfig.MEDIA_TRUSTED_PROXIES.split(","))
+            .map(String::trim)
+            .filter(address -> !address.isEmpty())
+            .collect(Collectors.toUnmodifiableSet());
+
+    private final Vertx vertx;
     private final ImmichClient immichClient;
+    private final MediaMemoryCache memoryCache;
+    private final MediaDiskCache diskCache;
+    private final MediaBlockCache blockCache;
+    private final MediaMetadataCache metadataCache;
+
+    // in-flight upstream fetches (client- or warmer-led) → who is waiting for them
+    private final ConcurrentHashMap<String, Flight> flights = new ConcurrentHashMap<>();
+    private final AtomicLong coalesced = new AtomicLong();
+    private final AtomicLong detachedFollowers = new AtomicLong();
+    private final AtomicLong offloaded = new AtomicLong();
+
+    // resized renditions being produced, and the worker pool producing them
+    private final ConcurrentHashMap<String, Future<Void>> renders = new ConcurrentHashMap<>();
+    private final AtomicInteger pendingRenders = new AtomicInteger();
+    private final AtomicLong rendersDone = new AtomicLong();
+    private final AtomicLong rendersRejected = new AtomicLong();
+    private final WorkerExecutor imageWorkers;
+
+    public MediaService(Vertx vertx, ImmichClient immichClient) {
+        this.vertx = vertx;
+        this.immichClient = immichClient;
+        this.memoryCache = new MediaMemoryCache(
+                AppConfig.MEDIA_MEMORY_CACHE_MAX_BYTES,
+                AppConfig.MEDIA_MEMORY_CACHE_MAX_ENTRY_BYTES
+        );
+        this.diskCache = new MediaDiskCache(
+                vertx,
+                AppConfig.MEDIA_CACHE_DIR,
+                AppConfig.MEDIA_CACHE_MAX_BYTES,
+                AppConfig.MEDIA_CACHE_MAX_ENTRY_BYTES
+        );
+        diskCache.open();
+
+        this.blockCache = new MediaBlockCache(
+                immichClient,
+                new MediaDiskCache(
+                        vertx,
+                        AppConfig.MEDIA_CACHE_DIR + "/blocks",
+                        AppConfig.MEDIA_BLOCK_CACHE_MAX_BYTES,
+                        AppConfig.MEDIA_BLOCK_SIZE
+                ),
+                AppConfig.MEDIA_BLOCK_SIZE,
+                AppConfig.MEDIA_BLOCK_READ_AHEAD
+        );
+        if (AppConfig.MEDIA_BLOCK_CACHE_ENABLED) {
+            blockCache.open();
+        }
+
+        this.metadataCache = new MediaMetadataCache(
+                immichClient,
+                AppConfig.MEDIA_META_CACHE_MAX_ENTRIES,
+                AppConfig.MEDIA_META_CONCURRENCY
+        );
 
-    public MediaService(Vertx vertx) {
-        this.immichClient = new ImmichClient(vertx);
+        this.imageWorkers = vertx.createSharedWorkerExecutor("media-image", AppConfig.MEDIA_IMAGE_WORKERS);
     }
 
     public void streamImmichAsset(
@@ -22,10 +125,1104 @@ public class MediaService {
             String type,
             RoutingContext ctx
     ) {
-        immichClient.streamAsset(
-                ctx,
-                assetId,
-                type
+        String variant = normalizeType(type);
+        String key = cacheKey(assetId, variant);
+
+        if (AppConfig.MEDIA_LOCAL_REVALIDATION && isConditional(ctx) && answerRevalidation(ctx, key)) {
+            return;
+        }
+
+        if (isSmallVariant(variant)) {
+            MediaMemoryCache.Entry hot = memoryCache.get(key);
+            if (hot != null) {
+                serveFromMemory(ctx, hot);
+                return;
+            }
+        }
+
+        MediaCacheEntry cached = diskCache.lookup(key);
+        if (cached != null) {
+            serveCached(ctx, assetId, variant, cached);
+            if (isSmallVariant(variant)) {
+                promoteToMemory(cached);
+            }
+            return;
+        }
+
+        if (AppConfig.MEDIA_BLOCK_CACHE_ENABLED
+                && "full".equals(variant)
+                && ctx.request().method() == HttpMethod.GET
+                && ctx.request().getHeader("Range") != null) {
+            serveOriginalRange(ctx, assetId);
+            return;
+        }
+
+        streamFromImmich(ctx, assetId, variant);
+    }
+
+    /**
+     * Whether the variant can be served without asking Immich.
+     */
+    public boolean isCached(String assetId, String type) {
+        return hasGenerated(cacheKey(assetId, normalizeType(type)));
+    }
+
+    /**
+     * Client-driven Immich fetches currently in flight; warm-ups nobody is
+     * waiting for do not count.
+     */
+    public int activeFetches() {
+        int active = 0;
+        for (Flight flight : flights.values()) {
+            if (flight.clientDriven) {
+                active++;
+            }
+        }
+        return active;
+    }
+
+    /**
+     * Pulls a variant into the cache through the same single flight that
+     * client requests use: joins a fetch already in flight for it, and
+     * requests arriving while this one is in flight join it in turn (at the
+     * warm-up's priority; the warmer only starts while no client fetch is in
+     * flight).
+     */
+    public Future<Void> warm(String assetId, String type, Dispatch dispatch) {
+        String variant = normalizeType(type);
+        String flightKey = cacheKey(assetId, variant) + ":" + HttpMethod.GET + ":";
+
+        Flight[] created = {null};
+        Flight flight = flights.computeIfAbsent(flightKey, key -> created[0] = new Flight(false));
+        if (created[0] == null) {
+            coalesced.incrementAndGet();
+            return flight.done.future();
+        }
+
+        fetchFlight(flightKey, flight, assetId, variant, false, null, null, dispatch);
+        return flight.done.future();
+    }
+
+    /**
+     * Media type, content type and size for each asset, in request order.
+     */
+    public Future<JsonArray> describeAssets(List<String> assetIds) {
+        return metadataCache.resolve(assetIds);
+    }
+
+    public JsonObject stats() {
+        return new JsonObject()
+                .put("memory", memoryCache.stats())
+                .put("disk", diskCache.stats())
+                .put("blocks", blockCache.stats())
+                .put("metadata", metadataCache.stats())
+                .put("immich", immichClient.stats())
+                .put("resize", new JsonObject()
+                        .put("rendered", rendersDone.get())
+                        .put("rejected", rendersRejected.get())
+                        .put("pending", pendingRenders.get()))
+                .put("coalescedRequests", coalesced.get())
+                .put("detachedSlowClients", detachedFollowers.get())
+                .put("offloadedRequests", offloaded.get())
+                .put("inFlightFetches", flights.size());
+    }
+
+    /*
+     * ============================================================
+     * RESIZED RENDITIONS
+     * ============================================================
+     */
+
+    /**
+     * Serves a JPEG rendition of the asset at the requested (quantized) size,
+     * rendered once from the smallest Immich variant that covers it and then
+     * cached like any other variant.
+     */
+    public void streamResized(String assetId, ResizeSpec spec, RoutingContext ctx) {
+        String key = cacheKey(assetId, spec.key());
+        String source = sourceVariant(spec);
+
+        if (AppConfig.MEDIA_LOCAL_REVALIDATION && isConditional(ctx) && answerRevalidation(ctx, key)) {
+            return;
+        }
+
+        MediaMemoryCache.Entry hot = memoryCache.get(key);
+        if (hot != null) {
+            serveFromMemory(ctx, hot);
+            return;
+        }
+
+        MediaCacheEntry cached = diskCache.lookup(key);
+        if (cached != null) {
+            serveCached(ctx, assetId, source, cached);
+            promoteToMemory(cached);
+            return;
+        }
+
+        render(assetId, spec, key, dispatchOf(ctx)).onComplete(ar -> {
+            if (ar.succeeded()) {
+                MediaMemoryCache.Entry rendered = memoryCache.get(key);
+                if (rendered != null) {
+                    serveFromMemory(ctx, rendered);
+                    return;
+                }
+                MediaCacheEntry stored = diskCache.lookup(key);
+                if (stored != null) {
+                    serveCached(ctx, assetId, source, stored);
+                    return;
+                }
+            } else {
+                log.warn("Resize failed, serving {} instead assetId={} spec={}: {}",
+                        source, assetId, spec.key(), ar.cause().getMessage());
+            }
+            // Unresized bytes are still a correct answer, just a heavier one.
+            streamImmichAsset(assetId, source, ctx);
+        });
+    }
+
+    /**
+     * The bytes of an Immich variant, from memory, disk or Immich. Fetched
+     * bytes are added to the disk cache. Fails rather than buffer more than
+     * {@code MEDIA_RESIZE_MAX_SOURCE_BYTES}, which a fallback to the original
+     * easily would.
+     */
+    public Future<Buffer> loadVariant(String assetId, String type) {
+        return loadVariant(assetId, type, Dispatch.ANONYMOUS);
+    }
+
+    public Future<Buffer> loadVariant(String assetId, String type, Dispatch dispatch) {
+        String variant = normalizeType(type);
+        String key = cacheKey(assetId, variant);
+
+        if (hasGenerated(key)) {
+            return loadGenerated(key);
+        }
+
+        return immichClient.openAsset(assetId, variant, false, null, null, dispatch).compose(upstream -> {
+            if (upstream.statusCode() != 200) {
+                ImmichClient.discard(upstream);
+                return Future.failedFuture("Unexpected Immich status " + upstream.statusCode() + " for " + key);
+            }
+
+            long length = parseLength(upstream.getHeader("Content-Length"));
+            if (length > AppConfig.MEDIA_RESIZE_MAX_SOURCE_BYTES) {
+                immichClient.abandon(upstream);
+                return Future.failedFuture("Immich " + ImmichClient.servedVariant(upstream)
+                        + " too large to load for " + key + ": " + length + " bytes");
+            }
+
+            Future<Buffer> body = readBounded(upstream, AppConfig.MEDIA_RESIZE_MAX_SOURCE_BYTES, key);
+
+            if (!variant.equals(ImmichClient.servedVariant(upstream))) {
+                // a stand-in while Immich generates the variant; not worth keeping
+                return body;
+            }
+            return body.onSuccess(bytes -> storeLoaded(key, upstream, bytes));
+        });
+    }
+
+    /**
+     * Collects a paused response's body, resetting it once more than
+     * {@code maxBytes} have arrived (bodies without a Content-Length).
+     */
+    private Future<Buffer> readBounded(HttpClientResponse upstream, long maxBytes, String key) {
+        Promise<Buffer> promise = Promise.promise();
+        Buffer collected = Buffer.buffer();
+        upstream.handler(chunk -> {
+            if (collected.length() + chunk.length() > maxBytes) {
+                upstream.handler(null);
+                immichClient.abandon(upstream);
+                promise.tryFail("Immich body too large to load for " + key + ": over " + maxBytes + " bytes");
+                return;
+            }
+            collected.appendBuffer(chunk);
+        });
+        upstream.exceptionHandler(err -> promise.tryFail(err));
+        upstream.endHandler(v -> promise.tryComplete(collected));
+        upstream.resume();
+        return promise.future();
+    }
+
+    /**
+     * Pulls a freshly uploaded asset's generated variant into the cache as
+     * soon as Immich has made it. Completes with {@code false} while Immich
+     * is still generating it, so the caller can try again later.
+     * <p>
+     * Always asks Immich, and replaces whatever is cached under the key only
+     * once the new bytes are on disk: the atomic move publishes over the old
+     * file, so readers see either the old entry or the new one, never a miss.
+     */
+    public Future<Boolean> pregenerate(String assetId, String variant) {
+        String key = cacheKey(assetId, variant);
+
+        return immichClient.openExactVariant(assetId, variant, Dispatch.BACKGROUND).compose(upstream -> {
+            if (upstream.statusCode() != 200) {
+                ImmichClient.discard(upstream);
+                return Future.succeededFuture(false);
+            }
+
+            Future<Buffer> body = upstream.body();
+            upstream.resume();
+            return body.compose(bytes -> storeLoaded(key, upstream, bytes))
+                    // the memory tier refills from the new file on the next read
+                    .onSuccess(v -> memoryCache.invalidate(key))
+                    .map(true);
+        });
+    }
+
+    private Future<Void> storeLoaded(String key, HttpClientResponse upstream, Buffer bytes) {
+        if (bytes.length() > diskCache.maxEntryBytes()) {
+            return Future.succeededFuture();
+        }
+        return diskCache.openWriter(
+                        key,
+                        upstream.getHeader("Content-Type"),
+                        upstream.getHeader("ETag"),
+                        upstream.getHeader("Last-Modified"),
+                        bytes.length()
+                )
+                .compose(writer -> writer.end(bytes))
+                .onFailure(err -> log.debug("Not caching loaded variant {}: {}", key, err.getMessage()))
+                .otherwiseEmpty();
+    }
+
+    /**
+     * The bytes of a resized rendition, rendering it first if needed.
+     */
+    public Future<Buffer> loadRendition(String assetId, ResizeSpec spec, Dispatch dispatch) {
+        String key = cacheKey(assetId, spec.key());
+        if (hasGenerated(key)) {
+            return loadGenerated(key);
+        }
+        return render(assetId, spec, key, dispatch).compose(v -> loadGenerated(key));
+    }
+
+    /*
+     * ============================================================
+     * GENERATED MEDIA (sprites, etc. keyed by the caller)
+     * ============================================================
+     */
+    public Future<Void> storeGenerated(String key, String contentType, String etag, Buffer bytes) {
+        memoryCache.put(key, bytes, contentType, etag, null);
+        return diskCache.openWriter(key, contentType, etag, null, bytes.length())
+                .compose(writer -> writer.end(bytes));
+    }
+
+    public boolean hasGenerated(String key) {
+        return memoryCache.contains(key) || diskCache.contains(key);
+    }
+
+    public void invalidateGenerated(String key) {
+        memoryCache.invalidate(key);
+        diskCache.invalidate(key);
+    }
+
+    /**
+     * Serves bytes stored with {@link #storeGenerated}; 404 when they are gone.
+     */
+    public void serveGenerated(String key, RoutingContext ctx) {
+        if (AppConfig.MEDIA_LOCAL_REVALIDATION && isConditional(ctx) && answerRevalidation(ctx, key)) {
+            return;
+        }
+
+        MediaMemoryCache.Entry hot = memoryCache.get(key);
+        if (hot != null) {
+            serveFromMemory(ctx, hot);
+            return;
+        }
+
+        MediaCacheEntry cached = diskCache.lookup(key);
+        if (cached == null) {
+            ctx.response().setStatusCode(404).end();
+            return;
+        }
+
+        HttpServerResponse response = ctx.response();
+        putMediaHeaders(response, cached.contentType, cached.etag, cached.lastModified);
+        if (ctx.request().method() == HttpMethod.HEAD) {
+            response.putHeader("Content-Length", String.valueOf(cached.length)).end();
+            return;
+        }
+        if (AppConfig.MEDIA_ACCEL_REDIRECT) {
+            offload(ctx, AppConfig.MEDIA_ACCEL_CACHE_LOCATION + diskCache.relativePathOf(cached));
+            return;
+        }
+        response.sendFile(diskCache.pathOf(cached)).onFailure(err -> {
+            log.warn("Generated media unreadable key={}", key, err);
+            diskCache.invalidate(key);
+            if (!response.headWritten()) {
+                response.setStatusCode(404).end();
+            } else if (!response.ended()) {
+                response.reset();
+            }
+        });
+        promoteToMemory(cached);
+    }
+
+    private Future<Buffer> loadGenerated(String key) {
+        MediaMemoryCache.Entry hot = memoryCache.get(key);
+        if (hot != null) {
+            try {
+                byte[] bytes = new byte[hot.length()];
+                hot.data.getBytes(hot.data.readerIndex(), bytes);
+                return Future.succeededFuture(Buffer.buffer(bytes));
+            } finally {
+                hot.release();
+            }
+        }
+
+        MediaCacheEntry cached = diskCache.lookup(key);
+        if (cached != null) {
+            return vertx.fileSystem().readFile(diskCache.pathOf(cached));
+        }
+        return Future.failedFuture("Generated media missing: " + key);
+    }
+
+    private Future<Void> render(String assetId, ResizeSpec spec, String key, Dispatch dispatch) {
+        Promise<Void> promise = Promise.promise();
+        Future<Void> existing = renders.putIfAbsent(key, promise.future());
+        if (existing != null) {
+            coalesced.incrementAndGet();
+            return existing;
+        }
+
+        if (pendingRenders.incrementAndGet() > AppConfig.MEDIA_RESIZE_MAX_PENDING) {
+            pendingRenders.decrementAndGet();
+            renders.remove(key);
+            rendersRejected.incrementAndGet();
+            promise.fail("Resize queue full");
+            return promise.future();
+        }
+
+        String source = sourceVariant(spec);
+
+        resizeFrom(assetId, source, spec, dispatch)
+                .compose(jpeg -> {
+                    if (jpeg != null || "preview".equals(source)) {
+                        return Future.succeededFuture(jpeg);
+                    }
+                    // Decided per response: this thumbnail may be WebP, which ImageIO
+                    // cannot read, or a stand-in original (HEIC, video) for this asset only.
+                    log.debug("Thumbnail not decodable, resizing from preview assetId={}", assetId);
+                    return resizeFrom(assetId, "preview", spec, dispatch);
+                })
+                .compose(jpeg -> jpeg == null
+                        ? Future.failedFuture("Undecodable source image for " + key)
+                        : store(assetId, spec, key, jpeg))
+                .onComplete(ar -> {
+                    renders.remove(key);
+                    pendingRenders.decrementAndGet();
+                    if (ar.succeeded()) {
+                        rendersDone.incrementAndGet();
+                    }
+                    promise.handle(ar);
+                });
+
+        return promise.future();
+    }
+
+    private Future<byte[]> resizeFrom(String assetId, String source, ResizeSpec spec, Dispatch dispatch) {
+        float quality = AppConfig.MEDIA_RESIZE_JPEG_QUALITY / 100f;
+        return loadVariant(assetId, source, dispatch).compose(bytes -> imageWorkers.executeBlocking(
+                () -> ImageResizer.resize(bytes.getBytes(), spec, quality),
+                false
+        ));
+    }
+
+    private Future<Void> store(String assetId, ResizeSpec spec, String key, byte[] jpeg) {
+        Buffer bytes = Buffer.buffer(jpeg);
+        String etag = "\"" + assetId + "-" + spec.key() + "\"";
+
+        memoryCache.put(key, bytes, "image/jpeg", etag, null);
+
+        return diskCache.openWriter(key, "image/jpeg", etag, null, jpeg.length)
+                .compose(writer -> writer.end(bytes))
+                .recover(err -> {
+                    // The memory copy can still serve this request.
+                    log.debug("Not caching rendition {} on disk: {}", key, err.getMessage());
+                    return Future.succeededFuture();
+                });
+    }
+
+    private String sourceVariant(ResizeSpec spec) {
+        return spec.longestEdge() <= THUMBNAIL_EDGE ? "thumbnail" : "preview";
+    }
+
+    /*
+     * ============================================================
+     * REVALIDATION
+     * ============================================================
+     */
+
+    /**
+     * Asset IDs are immutable, so a client revalidating this URL already
+     * holds the right bytes. Answers 304 unless we know the validator and it
+     * does not match; returns {@code false} to continue with a normal fetch.
+     */
+    private boolean answerRevalidation(RoutingContext ctx, String key) {
+        String etag = null;
+        String lastModified = null;
+
+        MediaCacheEntry cached = diskCache.peek(key);
+        if (cached != null) {
+            etag = cached.etag;
+            lastModified = cached.lastModified;
+        }
+
+        String ifNoneMatch = ctx.request().getHeader("If-None-Match");
+        if (ifNoneMatch != null && etag != null && !etagMatches(ifNoneMatch, etag)) {
+            return false;
+        }
+
+        log.debug("Answering media revalidation locally [key={}]", key);
+        notModified(ctx.response(), etag, lastModified);
+        return true;
+    }
+
+    private void notModified(HttpServerResponse response, String etag, String lastModified) {
+        putMediaHeaders(response, null, etag, lastModified);
+        response.setStatusCode(304).end();
+    }
+
+    private static boolean isConditional(RoutingContext ctx) {
+        return ctx.request().getHeader("If-None-Match") != null
+                || ctx.request().getHeader("If-Modified-Since") != null;
+    }
+
+    private static boolean etagMatches(String ifNoneMatch, String etag) {
+        String opaque = stripWeak(etag);
+        for (String candidate : ifNoneMatch.split(",")) {
+            String value = candidate.trim();
+            if ("*".equals(value) || stripWeak(value).equals(opaque)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String stripWeak(String etag) {
+        return etag.startsWith("W/") ? etag.substring(2) : etag;
+    }
+
+    /*
+     * ============================================================
+     * MEMORY HIT
+     * ============================================================
+     */
+    private void serveFromMemory(RoutingContext ctx, MediaMemoryCache.Entry hot) {
+        HttpServerResponse response = ctx.response();
+        boolean isHeadRequest = ctx.request().method() == HttpMethod.HEAD;
+        int total = hot.length();
+
+        putMediaHeaders(response, hot.contentType, hot.etag, hot.lastModified);
+        response.putHeader("Accept-Ranges", "bytes");
+
+        ByteRange range = ByteRange.parse(ctx.request().getHeader("Range"), total);
+        if (range == ByteRange.UNSATISFIABLE) {
+            hot.release();
+            response.setStatusCode(416)
+                    .putHeader("Content-Range", "bytes */" + total)
+                    .end();
+            return;
+        }
+
+        int offset = 0;
+        int length = total;
+        if (range != null) {
+            offset = (int) range.start;
+            length = (int) range.length();
+            response.setStatusCode(206)
+                    .putHeader("Content-Range", range.contentRange(total));
+        } else {
+            response.setStatusCode(200);
+        }
+
+        if (isHeadRequest) {
+            hot.release();
+            response.putHeader("Content-Length", String.valueOf(length)).end();
+            return;
+        }
+
+        // The slice shares the pooled buffer; our reference keeps it alive until written.
+        response.end(NettyBuffers.bufferOf(hot.data.slice(offset, length)))
+                .onComplete(v -> hot.release());
+    }
+
+    private void promoteToMemory(MediaCacheEntry entry) {
+        if (entry.length > memoryCache.maxEntryBytes()
+                || memoryCache.contains(entry.key)
+                || memoryCache.frequency(entry.key) < MEMORY_PROMOTION_FREQUENCY) {
+            return;
+        }
+
+        vertx.fileSystem().readFile(diskCache.pathOf(entry)).onSuccess(bytes ->
+                memoryCache.put(
+                        entry.key,
+                        bytes,
+                        entry.contentType,
+                        entry.etag,
+                        entry.lastModified
+                ));
+    }
+
+    /*
+     * ============================================================
+     * DISK CACHE HIT
+     * ============================================================
+     */
+    private void serveCached(
+            RoutingContext ctx,
+            String assetId,
+            String variant,
+            MediaCacheEntry entry
+    ) {
+        HttpServerResponse response = ctx.response();
+        boolean isHeadRequest = ctx.request().method() == HttpMethod.HEAD;
+
+        putMediaHeaders(response, entry.contentType, entry.etag, entry.lastModified);
+        response.putHeader("Accept-Ranges", "bytes");
+
+        if (AppConfig.MEDIA_ACCEL_REDIRECT && !isHeadRequest) {
+            // nginx answers Range itself and sends the file with sendfile
+            offload(ctx, AppConfig.MEDIA_ACCEL_CACHE_LOCATION + diskCache.relativePathOf(entry));
+            return;
+        }
+
+        ByteRange range = ByteRange.parse(ctx.request().getHeader("Range"), entry.length);
+        if (range == ByteRange.UNSATISFIABLE) {
+            response.setStatusCode(416)
+                    .putHeader("Content-Range", "bytes */" + entry.length)
+                    .end();
+            return;
+        }
+
+        long offset = 0;
+        long length = entry.length;
+        if (range != null) {
+            offset = range.start;
+            length = range.length();
+            response.setStatusCode(206)
+                    .putHeader("Content-Range", range.contentRange(entry.length));
+        } else {
+            response.setStatusCode(200);
+        }
+
+        log.debug("Serving cached media assetId={} type={} offset={} length={}", assetId, variant, offset, length);
+
+        if (isHeadRequest) {
+            response.putHeader("Content-Length", String.valueOf(length)).end();
+            return;
+        }
+
+        // sendFile uses zero-copy transfer where the transport supports it.
+        response.sendFile(diskCache.pathOf(entry), offset, length).onFailure(err -> {
+            log.warn("Cached media unreadable, refetching assetId={} type={}", assetId, variant, err);
+            diskCache.invalidate(entry.key);
+            if (!response.headWritten()) {
+                response.headers().remove("Content-Range").remove("Content-Length");
+                streamFromImmich(ctx, assetId, variant);
+            } else if (!response.ended()) {
+                response.reset();
+            }
+        });
+    }
+
+    /*
+     * ============================================================
+     * ORIGINAL RANGE (block cache)
+     * ============================================================
+     */
+
+    /**
+     * Assembles a Range response for an original from fixed-size cached
+     * blocks, fetching only the blocks we do not have yet. Seeking inside a
+     * video therefore never downloads the same bytes from Immich twice.
+     */
+    private void serveOriginalRange(RoutingContext ctx, String assetId) {
+        String rangeHeader = ctx.request().getHeader("Range");
+        Dispatch dispatch = dispatchOf(ctx);
+
+        blockCache.describe(assetId, ByteRange.startOf(rangeHeader), dispatch).onComplete(ar -> {
+            if (ar.failed()) {
+                log.debug("Block cache unavailable for assetId={}: {}", assetId, ar.cause().getMessage());
+                streamFromImmich(ctx, assetId, "full");
+                return;
+            }
+
+            MediaBlockCache.AssetInfo info = ar.result();
+            HttpServerResponse response = ctx.response();
+
+            ByteRange range = ByteRange.parse(rangeHeader, info.totalLength);
+            if (range == null) {
+                streamFromImmich(ctx, assetId, "full");
+                return;
+            }
+
+            putMediaHeaders(response, info.contentType, info.etag, info.lastModified);
+            response.putHeader("Accept-Ranges", "bytes");
+
+            if (range == ByteRange.UNSATISFIABLE) {
+                response.setStatusCode(416)
+                        .putHeader("Content-Range", "bytes */" + info.totalLength)
+                        .end();
+                return;
+            }
+
+            response.setStatusCode(206)
+                    .putHeader("Content-Range", range.contentRange(info.totalLength))
+                    .putHeader("Content-Length", String.valueOf(range.length()));
+
+            streamBlocks(ctx, dispatch, assetId, range.start, range.end);
+        });
+    }
+
+    /**
+     * Immich requests made for this client are queued fairly against other
+     * users: by the user a signed URL was issued to, else by client address.
+     * X-Forwarded-For is only believed from a configured proxy; anyone else
+     * could pick a fresh tenant per request and jump the fair queue.
+     */
+    private static Dispatch dispatchOf(RoutingContext ctx) {
+        String user = ctx.get(MediaUrlSigner.USER_KEY);
+        if (user != null) {
+            return Dispatch.interactive(user);
+        }
+        SocketAddress remote = ctx.request().remoteAddress();
+        String address = remote == null ? null : remote.hostAddress();
+        String forwarded = ctx.request().getHeader("X-Forwarded-For");
+        if (address != null && TRUSTED_PROXIES.contains(address) && forwarded != null && !forwarded.isBlank()) {
+            // the proxy appends what it saw, so the last hop is the one it vouches for
+            String[] hops = forwarded.split(",");
+            return Dispatch.interactive(hops[hops.length - 1].trim());
+        }
+        return Dispatch.interactive(address);
+    }
+
+    /**
+     * Hands the transfer of a cache-resident file to nginx: an empty
+     * response whose X-Accel-Redirect names an internal location. nginx keeps
+     * Content-Type and Cache-Control from this response, passes its ETag on
+     * and produces the body, ranges included. Only files already on disk are
+     * offloaded; Immich fetches stay behind the transport's breaker and
+     * limiter.
+     */
+    private void offload(RoutingContext ctx, String location) {
+        offloaded.incrementAndGet();
+        log.debug("Offloading media to nginx location={}", location);
+        ctx.response()
+                .putHeader("X-Accel-Redirect", location)
+                .end();
+    }
+
+    private void streamBlocks(RoutingContext ctx, Dispatch dispatch, String assetId, long position, long end) {
+        HttpServerResponse response = ctx.response();
+        if (response.closed() || response.ended()) {
+            return;
+        }
+
+        long blockSize = blockCache.blockSize();
+        long index = position / blockSize;
+        long offset = position - index * blockSize;
+        long length = Math.min(end, (index + 1) * blockSize - 1) - position + 1;
+
+        blockCache.block(assetId, index, dispatch)
+                .compose(block -> vertx.fileSystem()
+                        .open(blockCache.pathOf(block), new OpenOptions().setRead(true))
+                        .compose(file -> copyBlock(file, offset, length, response)))
+                .onComplete(ar -> {
+                    if (ar.failed()) {
+                        log.warn("Block stream failed assetId={} block={}", assetId, index, ar.cause());
+                        if (!response.headWritten()) {
+                            response.headers().remove("Content-Range").remove("Content-Length");
+                            streamFromImmich(ctx, assetId, "full");
+                        } else if (!response.ended()) {
+                            response.reset();
+                        }
+                        return;
+                    }
+
+                    long next = position + length;
+                    if (next > end) {
+                        response.end();
+                    } else {
+                        streamBlocks(ctx, dispatch, assetId, next, end);
+                    }
+                });
+    }
+
+    private Future<Void> copyBlock(AsyncFile file, long offset, long length, HttpServerResponse response) {
+        file.setReadPos(offset).setReadLength(length);
+        return file.pipe()
+                .endOnComplete(false)
+                .endOnFailure(false)
+                .to(response)
+                .eventually(() -> file.close());
+    }
+
+    /*
+     * ============================================================
+     * IMMICH PASS-THROUGH (+ cache fill)
+     * ============================================================
+     */
+    private void streamFromImmich(
+            RoutingContext ctx,
+            String assetId,
+            String variant
+    ) {
+        boolean isHeadRequest = ctx.request().method() == HttpMethod.HEAD;
+        String range = ctx.request().getHeader("Range");
+
+        // Only reached with validators when local revalidation is off or the
+        // client's ETag is stale; let Immich decide and pass its 304 through.
+        MultiMap conditionals = null;
+        if (isConditional(ctx)) {
+            conditionals = MultiMap.caseInsensitiveMultiMap();
+            copyRequestHeader(ctx, conditionals, "If-None-Match");
+            copyRequestHeader(ctx, conditionals, "If-Modified-Since");
+        }
+
+        String flightKey = cacheKey(assetId, variant)
+                + ":" + ctx.request().method()
+                + ":" + (range == null ? "" : range)
+                + (conditionals == null ? "" : ":" + conditionals.entries());
+
+        // Single flight: requests for the same (asset, type, range) arriving
+        // before Immich has answered share one upstream fetch, including one
+        // the warmer started.
+        boolean[] leader = {false};
+        Flight flight = flights.compute(flightKey, (key, current) -> {
+            if (current == null) {
+                leader[0] = true;
+                current = new Flight(true);
+            }
+            current.waiters.add(ctx);
+            current.clientDriven = true;
+            return current;
+        });
+
+        if (!leader[0]) {
+            coalesced.incrementAndGet();
+            log.debug("Joining in-flight Immich fetch assetId={} type={}", assetId, variant);
+            return;
+        }
+
+        fetchFlight(flightKey, flight, assetId, variant, isHeadRequest, range, conditionals, dispatchOf(ctx));
+    }
+
+    /**
+     * Runs the upstream fetch for a flight and hands the response to every
+     * request that joined it, filling the caches on the way. Completes the
+     * flight's {@code done} once the body has been piped.
+     */
+    private void fetchFlight(
+            String flightKey,
+            Flight flight,
+            String assetId,
+            String variant,
+            boolean isHeadRequest,
+            String range,
+            MultiMap conditionals,
+            Dispatch dispatch
+    ) {
+        immichClient.openAsset(assetId, variant, isHeadRequest, range, conditionals, dispatch).onComplete(ar -> {
+            // Close the flight before any body byte flows; later requests
+            // either hit the cache this fetch fills or start a new flight.
+            flights.remove(flightKey, flight);
+            List<RoutingContext> waiters = flight.waiters;
+
+            if (ar.failed()) {
+                flight.done.tryFail(ar.cause());
+                log.error("Immich request failed for assetId={} type={}", assetId, variant, ar.cause());
+                String message = String.valueOf(ar.cause().getMessage());
+                boolean unavailable = message.startsWith(ImmichTransport.UNAVAILABLE);
+                int status = message.contains("not found") ? 404 : unavailable ? 503 : 502;
+                for (RoutingContext waiter : waiters) {
+                    if (!waiter.response().ended()) {
+                        if (unavailable) {
+                            // fail fast while Immich recovers; tell clients when to come back
+                            waiter.response().putHeader("Retry-After",
+                                    String.valueOf(immichClient.retryAfterSeconds()));
+                        }
+                        waiter.response().setStatusCode(status).end();
+                    }
+                }
+                return;
+            }
+
+            HttpClientResponse upstream = ar.result();
+
+            if (upstream.statusCode() == 304) {
+                ImmichClient.discard(upstream);
+                for (RoutingContext waiter : waiters) {
+                    notModified(
+                            waiter.response(),
+                            upstream.getHeader("ETag"),
+                            upstream.getHeader("Last-Modified")
+                    );
+                }
+                flight.done.tryComplete();
+                return;
+            }
+
+            for (RoutingContext waiter : waiters) {
+                writeUpstreamHeaders(waiter.response(), upstream);
+            }
+
+            // ✅ For HEAD requests, only send headers (no body)
+            if (isHeadRequest) {
+                ImmichClient.discard(upstream);
+                waiters.forEach(waiter -> waiter.response().end());
+                flight.done.tryComplete();
+                return;
+            }
+
+            long contentLength = parseLength(upstream.getHeader("Content-Length"));
+            // A fallback (say the whole original standing in for a thumbnail
+            // Immich has not made yet) is served but never cached as the variant.
+            boolean complete = upstream.statusCode() == 200
+                    && contentLength > 0
+                    && variant.equals(ImmichClient.servedVariant(upstream));
+
+            MediaMemoryFill memoryFill = null;
+            if (complete && isSmallVariant(variant) && contentLength <= memoryCache.maxEntryBytes()) {
+                memoryFill = new MediaMemoryFill(
+                        memoryCache,
+                        cacheKey(assetId, variant),
+                        upstream.getHeader("Content-Type"),
+                        upstream.getHeader("ETag"),
+                        upstream.getHeader("Last-Modified"),
+                        contentLength
+                );
+            }
+
+            if (!complete || contentLength > diskCache.maxEntryBytes()) {
+                pipeUpstream(waiters, assetId, upstream, null, memoryFill).onComplete(flight.done);
+                return;
+            }
+
+            MediaMemoryFill fill = memoryFill;
+
+            diskCache.openWriter(
+                    cacheKey(assetId, variant),
+                    upstream.getHeader("Content-Type"),
+                    upstream.getHeader("ETag"),
+                    upstream.getHeader("Last-Modified"),
+                    contentLength
+            ).onComplete(writerAr -> {
+                if (writerAr.failed()) {
+                    log.debug("Not caching assetId={} type={}: {}", assetId, variant, writerAr.cause().getMessage());
+                }
+                pipeUpstream(waiters, assetId, upstream, writerAr.result(), fill).onComplete(flight.done);
+            });
+        });
+    }
+
+    private void writeUpstreamHeaders(HttpServerResponse response, HttpClientResponse upstream) {
+        response.setStatusCode(upstream.statusCode());
+        copyHeader(upstream, response, "Content-Length");
+        copyHeader(upstream, response, "Content-Range");
+        putMediaHeaders(
+                response,
+                upstream.getHeader("Content-Type"),
+                upstream.getHeader("ETag"),
+                upstream.getHeader("Last-Modified")
         );
+
+        String acceptRanges = upstream.getHeader("Accept-Ranges");
+        response.putHeader("Accept-Ranges", acceptRanges != null ? acceptRanges : "bytes");
+
+        if (upstream.getHeader("Content-Length") == null) {
+            response.setChunked(true);
+        }
+    }
+
+    private Future<Void> pipeUpstream(
+            List<RoutingContext> waiters,
+            String assetId,
+            HttpClientResponse upstream,
+            MediaCacheWriter writer,
+            MediaMemoryFill memoryFill
+    ) {
+        if (waiters.isEmpty() && writer == null && memoryFill == null) {
+            // a warm-up whose answer cannot be cached; nobody wants the body
+            immichClient.abandon(upstream);
+            return Future.succeededFuture();
+        }
+
+        List<WriteStream<Buffer>> targets = new ArrayList<>();
+        if (writer != null) {
+            targets.add(writer);
+        }
+        if (memoryFill != null) {
+            targets.add(memoryFill);
+        }
+        FanOutWriteStream fanOut = new FanOutWriteStream(targets);
+        // completes once the body is through and the cache fill published
+        Promise<Void> piped = Promise.promise();
+
+        for (RoutingContext waiter : waiters) {
+            HttpServerResponse response = waiter.response();
+            if (writer == null) {
+                fanOut.add(response);
+                continue;
+            }
+            // With a cache file being written, a client that cannot keep up
+            // is cut loose instead of pausing Immich for everyone, and gets
+            // the rest of the body from that file once it is published.
+            fanOut.addFollower(response, sent -> {
+                detachedFollowers.incrementAndGet();
+                log.debug("Slow client detached from Immich stream assetId={} after {} bytes", assetId, sent);
+                piped.future().onSuccess(v -> catchUpFromCache(response, writer.entry(), sent, assetId));
+            });
+        }
+
+        // A client that leaves while the pipe is paused never fails a write,
+        // so detach it explicitly; the other targets carry on.
+        for (RoutingContext waiter : waiters) {
+            HttpServerResponse response = waiter.response();
+            response.closeHandler(v -> {
+                if (!response.ended()) {
+                    log.debug("Client went away during media stream assetId={}", assetId);
+                    fanOut.remove(response, new IllegalStateException("Client closed connection"));
+                }
+            });
+        }
+
+        // Stream the body chunk by chunk; the pipe pauses Immich whenever a
+        // cache fill (or, when nothing is cached, a client) has a full write
+        // queue and resumes it on drain.
+        return upstream.pipe()
+                .endOnFailure(false)
+                .to(fanOut)
+                .onComplete(ar -> {
+                    // no-ops when the fills were already published
+                    if (writer != null) {
+                        writer.abort();
+                    }
+                    if (memoryFill != null) {
+                        memoryFill.abort();
+                    }
+                    if (ar.succeeded()) {
+                        piped.complete();
+                        return;
+                    }
+
+                    log.warn("Immich stream interrupted assetId={}", assetId, ar.cause());
+                    upstream.request().reset();
+                    for (RoutingContext waiter : waiters) {
+                        if (!waiter.response().ended()) {
+                            waiter.response().reset();
+                        }
+                    }
+                });
+    }
+
+    /**
+     * Sends a detached client the part of a just-cached body it has not
+     * received yet. Its headers already went out with the upstream's, so the
+     * file is piped rather than sent with {@code sendFile}.
+     */
+    private void catchUpFromCache(HttpServerResponse response, MediaCacheEntry entry, long sent, String assetId) {
+        if (response.ended() || response.closed()) {
+            return;
+        }
+        vertx.fileSystem().open(diskCache.pathOf(entry), new OpenOptions().setRead(true))
+                .compose(file -> file.setReadPos(sent).pipeTo(response).eventually(() -> file.close()))
+                .onFailure(err -> {
+                    log.debug("Catching up detached client failed assetId={}: {}", assetId, err.getMessage());
+                    if (!response.ended()) {
+                        response.reset();
+                    }
+                });
+    }
+
+    /*
+     * ============================================================
+     * Helpers
+     * ============================================================
+     */
+    private void putMediaHeaders(
+            HttpServerResponse response,
+            String contentType,
+            String etag,
+            String lastModified
+    ) {
+        if (contentType != null) {
+            response.putHeader("Content-Type", contentType);
+        }
+        if (etag != null) {
+            response.putHeader("ETag", etag);
+        }
+        if (lastModified != null) {
+            response.putHeader("Last-Modified", lastModified);
+        }
+
+        // ✅ CRITICAL: Force inline
+        response.putHeader("Content-Disposition", "inline");
+
+        // Asset IDs are immutable; aggressive caching improves perceived load speed.
+        response.putHeader("Cache-Control", "public, max-age=31536000, immutable");
+
+        // CORS
+        response.putHeader("Access-Control-Allow-Origin", "*");
+        response.putHeader("Access-Control-Allow-Methods", "GET, HEAD, OPTIONS");
+        response.putHeader("Access-Control-Allow-Headers", "Range, Content-Type");
+        response.putHeader("Access-Control-Expose-Headers", "Content-Range, Content-Length, Accept-Ranges");
+    }
+
+    private void copyHeader(HttpClientResponse source, HttpServerResponse target, String headerName) {
+        String value = source.getHeader(headerName);
+        if (value != null) {
+            target.putHeader(headerName, value);
+        }
+    }
+
+    private static void copyRequestHeader(RoutingContext ctx, MultiMap target, String headerName) {
+        String value = ctx.request().getHeader(headerName);
+        if (value != null) {
+            target.add(headerName, value);
+        }
+    }
+
+    private static String normalizeType(String type) {
+        String normalized = type == null ? "thumbnail" : type.toLowerCase();
+        if ("thumbnail".equals(normalized) || "preview".equals(normalized)) {
+            return normalized;
+        }
+        return "full";
+    }
+
+    private static boolean isSmallVariant(String variant) {
+        return "thumbnail".equals(variant) || "preview".equals(variant);
+    }
+
+    private static String cacheKey(String assetId, String variant) {
+        return assetId + ":" + variant;
+    }
+
+    /**
+     * One upstream fetch and the requests sharing it. {@code waiters} is only
+     * touched inside the map's compute, and read once the flight has left
+     * the map.
+     */
+    private static final class Flight {
+        final List<RoutingContext> waiters = new ArrayList<>();
+        final Promise<Void> done = Promise.promise();
+        volatile boolean clientDriven;
+
+        Flight(boolean clientDriven) {
+            this.clientDriven = clientDriven;
+        }
+    }
+
+    private static long parseLength(String header) {
+        if (header == null) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(header.trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
     }
 }
@@ -0,0 +1,176 @@
+package com.thisday.services;
+
+import com.thisday.config.AppConfig;
+import com.thisday.immich.ImmichTransport.Dispatch;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Pulls thumbnails into the media cache for asset IDs the client is about to
+ * ask for, e.g. those just returned by a calendar or summary read.
+ * <p>
+ * Warming is strictly background work: a small fixed number of fetches run
+ * at once, nothing starts while client-driven Immich fetches are in flight,
+ * fetches run in the transport's background class, and asset IDs beyond the
+ * queue limit are dropped rather than buffered.
+ */
+public class MediaWarmer {
+
+    private static final Logger log =
+            LoggerFactory.getLogger(MediaWarmer.class);
+
+    private static final String VARIANT = "thumbnail";
+    private static final long YIELD_RETRY_MS = 250;
+
+    private final Vertx vertx;
+    private final MediaService mediaService;
+
+    private final ArrayDeque<String> queue = new ArrayDeque<>();
+    private final Set<String> pending = new HashSet<>();
+    private int active;
+    private boolean retryScheduled;
+
+    private long warmed;
+    private long skipped;
+    private long dropped;
+    private long failed;
+
+    public MediaWarmer(Vertx vertx, MediaService mediaService) {
+        this.vertx = vertx;
+        this.mediaService = mediaService;
+    }
+
+    /**
+     * Queues the thumbnails of every asset referenced by {@code entries}:
+     * entry documents ({@code immichAssetIds}) or calendar rows
+     * ({@code immichAssetId}).
+     */
+    public void warmFrom(JsonArray entries) {
+        if (!AppConfig.MEDIA_WARM_ENABLED || entries == null) {
+            return;
+        }
+
+        Set<String> assetIds = new LinkedHashSet<>();
+        for (Object value : entries) {
+            if (!(value instanceof JsonObject entry)) {
+                continue;
+            }
+            String single = entry.getString("immichAssetId");
+            if (single != null) {
+                assetIds.add(single);
+            }
+            JsonArray many = entry.getJsonArray("immichAssetIds");
+            if (many != null) {
+                for (Object id : many) {
+                    if (id instanceof String assetId) {
+                        assetIds.add(assetId);
+                    }
+                }
+            }
+        }
+        warm(assetIds);
+    }
+
+    public void warm(Collection<String> assetIds) {
+        int added = 0;
+        synchronized (this) {
+            for (String assetId : assetIds) {
+                if (pending.contains(assetId)) {
+                    continue;
+                }
+                if (mediaService.isCached(assetId, VARIANT)) {
+                    skipped++;
+                    continue;
+                }
+                if (queue.size() >= AppConfig.MEDIA_WARM_MAX_QUEUED) {
+                    dropped++;
+                    continue;
+                }
+                queue.add(assetId);
+                pending.add(assetId);
+                added++;
+            }
+        }
+
+        if (added > 0) {
+            log.debug("Queued {} thumbnails for warming", added);
+            drain();
+        }
+    }
+
+    public synchronized JsonObject stats() {
+        return new JsonObject()
+                .put("queued", queue.size())
+                .put("active", active)
+                .put("warmed", warmed)
+                .put("skipped", skipped)
+                .put("dropped", dropped)
+                .put("failed", failed);
+    }
+
+    private void drain() {
+        while (true) {
+            String assetId;
+            synchronized (this) {
+                if (queue.isEmpty() || active >= AppConfig.MEDIA_WARM_CONCURRENCY) {
+                    return;
+                }
+                // Client requests own the Immich link; come back when it is quiet.
+                if (mediaService.activeFetches() > 0) {
+                    if (!retryScheduled) {
+                        retryScheduled = true;
+                        vertx.setTimer(YIELD_RETRY_MS, id -> {
+                            synchronized (this) {
+                                retryScheduled = false;
+                            }
+                            drain();
+                        });
+                    }
+                    return;
+                }
+                assetId = queue.poll();
+                active++;
+            }
+
+            fetch(assetId);
+        }
+    }
+
+    private void fetch(String assetId) {
+        if (mediaService.isCached(assetId, VARIANT)) {
+            finished(assetId, true, false);
+            return;
+        }
+
+        mediaService.warm(assetId, VARIANT, Dispatch.BACKGROUND).onComplete(ar -> {
+            if (ar.failed()) {
+                log.debug("Thumbnail warm failed [assetId={}]: {}", assetId, ar.cause().getMessage());
+            }
+            finished(assetId, false, ar.failed());
+        });
+    }
+
+    private void finished(String assetId, boolean alreadyCached, boolean failure) {
+        synchronized (this) {
+            active--;
+            pending.remove(assetId);
+            if (alreadyCached) {
+                skipped++;
+            } else if (failure) {
+                failed++;
+            } else {
+                warmed++;
+            }
+        }
+        drain();
+    }
+}
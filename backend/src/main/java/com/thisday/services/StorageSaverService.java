@@ -0,0 +1,145 @@
+package com.thisday.services;
+
+import com.thisday.config.AppConfig;
+import com.thisday.media.ImageResizer;
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import io.vertx.core.WorkerExecutor;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.web.multipart.FormDataPart;
+import io.vertx.ext.web.multipart.MultipartForm;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Storage-saver uploads: photos are downscaled to
+ * {@code MEDIA_SAVER_LONG_EDGE} and re-encoded as JPEG before they are sent
+ * to Immich, which cuts both upload time and Immich storage. EXIF (capture
+ * date, orientation) is carried over from JPEG originals.
+ * <p>
+ * Runs on its own bounded worker pool so a burst of large photos cannot
+ * starve thumbnail rendering. Anything it cannot or need not shrink (videos,
+ * HEIC, small files, files that would not get smaller) is uploaded as is.
+ */
+public class StorageSaverService {
+
+    private static final Logger log =
+            LoggerFactory.getLogger(StorageSaverService.class);
+
+    private static final Set<String> SHRINKABLE = Set.of("image/jpeg", "image/png", "image/bmp");
+    private static final String SUFFIX = ".saver.jpg";
+
+    private final Vertx vertx;
+    private final WorkerExecutor saverWorkers;
+
+    private final AtomicLong shrunk = new AtomicLong();
+    private final AtomicLong skipped = new AtomicLong();
+    private final AtomicLong bytesIn = new AtomicLong();
+    private final AtomicLong bytesOut = new AtomicLong();
+
+    public StorageSaverService(Vertx vertx) {
+        this.vertx = vertx;
+        this.saverWorkers = vertx.createSharedWorkerExecutor("media-saver", AppConfig.MEDIA_SAVER_WORKERS);
+    }
+
+    /**
+     * The form to upload instead of {@code form}: the same attributes with
+     * the photo swapped for its smaller JPEG, or {@code form} itself when
+     * there is nothing to gain. Never fails; a shrink error uploads the
+     * original.
+     */
+    public Future<MultipartForm> shrink(MultipartForm form) {
+        FormDataPart file = fileOf(form);
+        if (file == null || file.mediaType() == null || !SHRINKABLE.contains(file.mediaType().toLowerCase())) {
+            skipped.incrementAndGet();
+            return Future.succeededFuture(form);
+        }
+
+        File source = new File(file.pathname());
+        if (source.length() < AppConfig.MEDIA_SAVER_MIN_BYTES) {
+            skipped.incrementAndGet();
+            return Future.succeededFuture(form);
+        }
+
+        return saverWorkers.<MultipartForm>executeBlocking(() -> {
+            byte[] jpeg = ImageResizer.shrink(
+                    source,
+                    AppConfig.MEDIA_SAVER_LONG_EDGE,
+                    AppConfig.MEDIA_SAVER_JPEG_QUALITY / 100f);
+            if (jpeg == null) {
+                skipped.incrementAndGet();
+                return form;
+            }
+
+            File target = new File(source.getPath() + SUFFIX);
+            Files.write(target.toPath(), jpeg);
+
+            shrunk.incrementAndGet();
+            bytesIn.addAndGet(source.length());
+            bytesOut.addAndGet(jpeg.length);
+            log.debug("Storage saver shrank {} from {} to {} bytes", file.filename(), source.length(), jpeg.length);
+
+            return replaceFile(form, file, target);
+        }, false).otherwise(err -> {
+            log.warn("Storage saver failed for {}, uploading original: {}", file.filename(), err.getMessage());
+            skipped.incrementAndGet();
+            return form;
+        });
+    }
+
+    /**
+     * Deletes the JPEG {@link #shrink} wrote for {@code form}, if any, once
+     * the upload is done with it.
+     */
+    public void release(MultipartForm form) {
+        FormDataPart file = fileOf(form);
+        if (file != null && file.pathname().endsWith(SUFFIX)) {
+            vertx.fileSystem().delete(file.pathname()).onFailure(err ->
+                    log.debug("Failed to delete shrunk upload [path={}]", file.pathname(), err));
+        }
+    }
+
+    public JsonObject stats() {
+        return new JsonObject()
+                .put("shrunk", shrunk.get())
+                .put("skipped", skipped.get())
+                .put("bytesIn", bytesIn.get())
+                .put("bytesOut", bytesOut.get());
+    }
+
+    private static MultipartForm replaceFile(MultipartForm form, FormDataPart file, File target) {
+        MultipartForm replaced = MultipartForm.create();
+        for (FormDataPart part : form) {
+            if (part.isAttribute()) {
+                replaced.attribute(part.name(), part.value());
+            } else if (part == file) {
+                replaced.binaryFileUpload(part.name(), jpegName(part.filename()), target.getPath(), "image/jpeg");
+            } else {
+                replaced.binaryFileUpload(part.name(), part.filename(), part.pathname(), part.mediaType());
+            }
+        }
+        return replaced;
+    }
+
+    private static String jpegName(String filename) {
+        if (filename == null || filename.isBlank()) {
+            return "upload.jpg";
+        }
+        int dot = filename.lastIndexOf('.');
+        return (dot > 0 ? filename.substring(0, dot) : filename) + ".jpg";
+    }
+
+    private static FormDataPart fileOf(MultipartForm form) {
+        for (FormDataPart part : form) {
+            if (!part.isAttribute() && part.pathname() != null) {
+                return part;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,161 @@
+package com.thisday.services;
+
+import com.thisday.config.AppConfig;
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * After an upload, waits for Immich to generate the new asset's thumbnail
+ * and preview and pulls both into the media cache, so the first view of a
+ * fresh entry (usually right away) is a cache hit.
+ * <p>
+ * Each asset is checked after {@code MEDIA_PREGEN_INITIAL_DELAY_MS}, then
+ * with doubling delays up to {@code MEDIA_PREGEN_MAX_DELAY_MS}, until both
+ * variants exist or {@code MEDIA_PREGEN_MAX_ATTEMPTS} checks have been made.
+ * Only a few checks run at once, and they go out in the transport's
+ * background class.
+ */
+public class ThumbnailPregenerator {
+
+    private static final Logger log =
+            LoggerFactory.getLogger(ThumbnailPregenerator.class);
+
+    private static final List<String> VARIANTS = List.of("thumbnail", "preview");
+
+    private final Vertx vertx;
+    private final MediaService mediaService;
+
+    private final ArrayDeque<Job> ready = new ArrayDeque<>();
+    private final Set<String> tracked = new HashSet<>();
+    private int active;
+
+    private long completed;
+    private long retries;
+    private long gaveUp;
+    private long dropped;
+
+    public ThumbnailPregenerator(Vertx vertx, MediaService mediaService) {
+        this.vertx = vertx;
+        this.mediaService = mediaService;
+    }
+
+    public void schedule(Collection<String> assetIds) {
+        if (!AppConfig.MEDIA_PREGEN_ENABLED) {
+            return;
+        }
+        for (String assetId : assetIds) {
+            synchronized (this) {
+                if (tracked.contains(assetId)) {
+                    continue;
+                }
+                if (tracked.size() >= AppConfig.MEDIA_PREGEN_MAX_QUEUED) {
+                    dropped++;
+                    continue;
+                }
+                tracked.add(assetId);
+            }
+            later(new Job(assetId), AppConfig.MEDIA_PREGEN_INITIAL_DELAY_MS);
+        }
+    }
+
+    public synchronized JsonObject stats() {
+        return new JsonObject()
+                .put("tracked", tracked.size())
+                .put("active", active)
+                .put("completed", completed)
+                .put("retries", retries)
+                .put("gaveUp", gaveUp)
+                .put("dropped", dropped);
+    }
+
+    private void later(Job job, long delayMs) {
+        vertx.setTimer(delayMs, id -> {
+            synchronized (this) {
+                ready.add(job);
+            }
+            drain();
+        });
+    }
+
+    private void drain() {
+        while (true) {
+            Job job;
+            synchronized (this) {
+                if (ready.isEmpty() || active >= AppConfig.MEDIA_PREGEN_CONCURRENCY) {
+                    return;
+                }
+                job = ready.poll();
+                active++;
+            }
+            check(job);
+        }
+    }
+
+    private void check(Job job) {
+        job.attempts++;
+
+        List<Future<Boolean>> checks = new ArrayList<>();
+        for (String variant : job.missing) {
+            checks.add(mediaService.pregenerate(job.assetId, variant)
+                    .onSuccess(done -> {
+                        if (done) {
+                            synchronized (job) {
+                                job.missing.remove(variant);
+                            }
+                        }
+                    }));
+        }
+
+        Future.join(checks).onComplete(ar -> {
+            boolean finished;
+            synchronized (job) {
+                finished = job.missing.isEmpty();
+            }
+
+            synchronized (this) {
+                active--;
+                if (finished) {
+                    tracked.remove(job.assetId);
+                    completed++;
+                } else if (job.attempts >= AppConfig.MEDIA_PREGEN_MAX_ATTEMPTS) {
+                    tracked.remove(job.assetId);
+                    gaveUp++;
+                } else {
+                    retries++;
+                }
+            }
+
+            if (finished) {
+                log.debug("Pregenerated thumbnails [assetId={}, attempts={}]", job.assetId, job.attempts);
+            } else if (job.attempts >= AppConfig.MEDIA_PREGEN_MAX_ATTEMPTS) {
+                log.info("Gave up pregenerating thumbnails [assetId={}, missing={}]", job.assetId, job.missing);
+            } else {
+                long delay = Math.min(
+                        AppConfig.MEDIA_PREGEN_MAX_DELAY_MS,
+                        AppConfig.MEDIA_PREGEN_INITIAL_DELAY_MS << job.attempts);
+                later(job, delay);
+            }
+            drain();
+        });
+    }
+
+    private static final class Job {
+        final String assetId;
+        final Set<String> missing = new HashSet<>(VARIANTS);
+        int attempts;
+
+        Job(String assetId) {
+            this.assetId = assetId;
+        }
+    }
+}
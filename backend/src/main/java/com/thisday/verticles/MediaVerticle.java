@@ -0,0 +1,108 @@
+package com.thisday.verticles;
+
+import com.thisday.auth.MediaUrlSigner;
+import com.thisday.config.AppConfig;
+import com.thisday.routes.CalendarSpriteRoutes;
+import com.thisday.routes.CorsHandler;
+import com.thisday.routes.MediaRoutes;
+import com.thisday.services.CalendarSpriteService;
+import com.thisday.services.MediaService;
+import io.vertx.core.AbstractVerticle;
+import io.vertx.core.Promise;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.web.Router;
+import io.vertx.ext.web.RoutingContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Serves media bytes (Immich assets and calendar sprites) on
+ * {@code MEDIA_HTTP_PORT}, away from the JSON API's event loop, so a long
+ * video transfer never delays a login or an entry read.
+ * <p>
+ * Deployed with {@code MEDIA_VERTICLE_INSTANCES} instances sharing one
+ * server port, each on its own event loop. All instances share the services
+ * handed in, and therefore one cache and one Immich transport. Requests
+ * beyond {@code MEDIA_MAX_CONCURRENT_REQUESTS} in flight across all
+ * instances are turned away with 503.
+ */
+public class MediaVerticle extends AbstractVerticle {
+
+    private static final Logger log =
+            LoggerFactory.getLogger(MediaVerticle.class);
+
+    private static final AtomicInteger IN_FLIGHT = new AtomicInteger();
+    private static final AtomicLong REJECTED = new AtomicLong();
+
+    private final MediaUrlSigner mediaUrlSigner;
+    private final MediaService mediaService;
+    private final CalendarSpriteService calendarSpriteService;
+
+    public MediaVerticle(
+            MediaUrlSigner mediaUrlSigner,
+            MediaService mediaService,
+            CalendarSpriteService calendarSpriteService
+    ) {
+        this.mediaUrlSigner = mediaUrlSigner;
+        this.mediaService = mediaService;
+        this.calendarSpriteService = calendarSpriteService;
+    }
+
+    public static JsonObject stats() {
+        return new JsonObject()
+                .put("inFlight", IN_FLIGHT.get())
+                .put("maxInFlight", AppConfig.MEDIA_MAX_CONCURRENT_REQUESTS)
+                .put("rejected", REJECTED.get());
+    }
+
+    @Override
+    public void start(Promise<Void> startPromise) {
+        Router router = Router.router(vertx);
+
+        router.route().handler(new CorsHandler());
+        router.route().handler(MediaVerticle::limit);
+
+        router.get("/health").handler(ctx -> ctx.response()
+                .putHeader("Content-Type", "application/json")
+                .end(new JsonObject()
+                        .put("status", "ok")
+                        .put("requests", stats())
+                        .encode()));
+
+        MediaRoutes.mountStreams(router, mediaUrlSigner, mediaService);
+        CalendarSpriteRoutes.mountImages(router, mediaUrlSigner, calendarSpriteService);
+
+        int port = Integer.parseInt(AppConfig.MEDIA_HTTP_PORT);
+
+        vertx.createHttpServer()
+                .requestHandler(router)
+                .listen(port, ar -> {
+                    if (ar.succeeded()) {
+                        log.debug("Media server instance listening on port {}", port);
+                        startPromise.complete();
+                    } else {
+                        log.error("Failed to start media server on port {}", port, ar.cause());
+                        startPromise.fail(ar.cause());
+                    }
+                });
+    }
+
+    private static void limit(RoutingContext ctx) {
+        if (IN_FLIGHT.incrementAndGet() > AppConfig.MEDIA_MAX_CONCURRENT_REQUESTS) {
+            IN_FLIGHT.decrementAndGet();
+            REJECTED.incrementAndGet();
+            ctx.response()
+                    .putHeader("Retry-After", "1")
+                    .setStatusCode(503)
+                    .end();
+            return;
+        }
+
+        // runs once, whether the response ends or the connection drops
+        ctx.addEndHandler(ar -> IN_FLIGHT.decrementAndGet());
+        ctx.next();
+    }
+}
@@ -4,18 +4,25 @@ import com.thisday.auth.*;
 import com.thisday.config.AppConfig;
 import com.thisday.db.MongoProvider;
 import com.thisday.immich.ImmichClient;
+import com.thisday.immich.ImmichTransport;
 import com.thisday.repositories.EntryRepository;
 import com.thisday.repositories.UserRepository;
+import com.thisday.routes.CalendarSpriteRoutes;
+import com.thisday.routes.CorsHandler;
 import com.thisday.routes.EntryReadRoutes;
 import com.thisday.routes.MediaRoutes;
 import com.thisday.routes.UserRoutes;
 import com.thisday.routes.EntryRoutes;
+import com.thisday.services.CalendarSpriteService;
 import com.thisday.services.EntryReadService;
 import com.thisday.services.EntryService;
+import com.thisday.services.MediaProbeService;
 import com.thisday.services.MediaService;
+import com.thisday.services.MediaWarmer;
+import com.thisday.services.StorageSaverService;
+import com.thisday.services.ThumbnailPregenerator;
 import com.thisday.services.UserService;
 import io.vertx.core.*;
-import io.vertx.core.http.HttpMethod;
 import io.vertx.core.json.JsonObject;
 import io.vertx.ext.web.Router;
 import io.vertx.ext.web.handler.BodyHandler;
@@ -33,41 +40,26 @@ public class ThisDayVerticle extends AbstractVerticle {
 
         Router router = Router.router(vertx);
 
-        // Allow all origins (no validation) and short-circuit preflight
+        router.route().handler(new CorsHandler());
+
+        BodyHandler bodyHandler = BodyHandler.create();
         router.route().handler(ctx -> {
-            String origin = ctx.request().getHeader("Origin");
-            if (origin != null && !origin.isBlank()) {
-                ctx.response().putHeader("Access-Control-Allow-Origin", origin);
-                ctx.response().putHeader("Vary", "Origin");
+            // streamed uploads read their own body
+            if (EntryRoutes.isStreamedUpload(ctx.request())) {
+                ctx.next();
             } else {
-                ctx.response().putHeader("Access-Control-Allow-Origin", "*");
-            }
-
-            ctx.response().putHeader(
-                    "Access-Control-Allow-Methods",
-                    "GET, POST, PUT, DELETE, OPTIONS, HEAD"
-            );
-            ctx.response().putHeader(
-                    "Access-Control-Allow-Headers",
-                    "Content-Type, Authorization, authorization, Accept, Origin, " +
-                            "Access-Control-Request-Method, Access-Control-Request-Headers"
-            );
-            ctx.response().putHeader("Access-Control-Allow-Credentials", "true");
-            ctx.response().putHeader("Access-Control-Max-Age", "86400");
-
-            if (ctx.request().method() == HttpMethod.OPTIONS) {
-                ctx.response().setStatusCode(204).end();
-                return;
+                bodyHandler.handle(ctx);
             }
-
-            ctx.next();
         });
-
-        router.route().handler(BodyHandler.create());
         log.debug("Router and BodyHandler initialized");
 
         log.info("Initializing MongoDB");
         var mongo = MongoProvider.get(vertx);
+        var immichClient = new ImmichClient(vertx, new ImmichTransport(vertx));
+        var mediaService = new MediaService(vertx, immichClient);
+        var mediaWarmer = new MediaWarmer(vertx, mediaService);
+        var thumbnailPregenerator = new ThumbnailPregenerator(vertx, mediaService);
+        var storageSaverService = new StorageSaverService(vertx);
 
         router.get("/health").handler(ctx -> {
             log.debug("Health check requested");
@@ -81,6 +73,11 @@ public class ThisDayVerticle extends AbstractVerticle {
                             .end(new JsonObject()
                                     .put("status", "ok")
                                     .put("mongo", "up")
+                                    .put("media", mediaService.stats()
+                                            .put("warmer", mediaWarmer.stats())
+                                            .put("pregen", thumbnailPregenerator.stats())
+                                            .put("server", MediaVerticle.stats())
+                                            .put("saver", storageSaverService.stats()))
                                     .encode());
                 } else {
                     log.warn("Health check failed: MongoDB ping error", ar.cause());
@@ -91,6 +88,11 @@ public class ThisDayVerticle extends AbstractVerticle {
                                     .put("status", "degraded")
                                     .put("mongo", "down")
                                     .put("error", String.valueOf(ar.cause().getMessage()))
+                                    .put("media", mediaService.stats()
+                                            .put("warmer", mediaWarmer.stats())
+                                            .put("pregen", thumbnailPregenerator.stats())
+                                            .put("server", MediaVerticle.stats())
+                                            .put("saver", storageSaverService.stats()))
                                     .encode());
                 }
             });
@@ -99,9 +101,15 @@ public class ThisDayVerticle extends AbstractVerticle {
         var userRepo = new UserRepository(mongo);
         var userService = new UserService(userRepo);
         var entryRepo = new EntryRepository(mongo);
-        var immichClient = new ImmichClient(vertx);
-        var entryService = new EntryService(immichClient, entryRepo);
-        var entryReadService = new EntryReadService(vertx);
+        var entryService = new EntryService(
+                immichClient,
+                entryRepo,
+                new MediaProbeService(vertx),
+                thumbnailPregenerator,
+                storageSaverService);
+        var mediaUrlSigner = new MediaUrlSigner();
+        var entryReadService = new EntryReadService(vertx, mediaWarmer, mediaUrlSigner);
+        var calendarSpriteService = new CalendarSpriteService(vertx, entryReadService, mediaService, mediaUrlSigner);
         log.info("Initializing Clerk JWT verifier and auth handler");
         var jwtVerifier = new ClerkJwtVerifier(vertx);
         var authHandler = new AuthHandler(jwtVerifier);
@@ -112,8 +120,10 @@ public class ThisDayVerticle extends AbstractVerticle {
         MediaRoutes.mount(
                 router,
                 authHandler,
-                new MediaService(vertx)
+                mediaUrlSigner,
+                mediaService
         );
+        CalendarSpriteRoutes.mount(router, authHandler, mediaUrlSigner, calendarSpriteService);
 
         int port = Integer.parseInt(AppConfig.HTTP_PORT);
         log.info("Starting HTTP server on port {}", port);
@@ -127,5 +137,21 @@ public class ThisDayVerticle extends AbstractVerticle {
                         log.error("Failed to start HTTP server on port {}", port, ar.cause());
                     }
                 });
+
+        if (!AppConfig.MEDIA_HTTP_PORT.isBlank()) {
+            // Media bytes get their own server and event loops; the routes above stay for
+            // clients that still send media requests to HTTP_PORT.
+            vertx.deployVerticle(
+                    () -> new MediaVerticle(mediaUrlSigner, mediaService, calendarSpriteService),
+                    new DeploymentOptions().setInstances(AppConfig.MEDIA_VERTICLE_INSTANCES),
+                    ar -> {
+                        if (ar.succeeded()) {
+                            log.info("Media server started on port {} with {} instances",
+                                    AppConfig.MEDIA_HTTP_PORT, AppConfig.MEDIA_VERTICLE_INSTANCES);
+                        } else {
+                            log.error("Failed to start media server", ar.cause());
+                        }
+                    });
+        }
     }
 }
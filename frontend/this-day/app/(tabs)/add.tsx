@@ -26,9 +26,10 @@ import {
   createBackfilledEntry,
   createEntry,
   type EntryFile,
+  getDayEntries,
   updateEntry,
 } from "@/services/entries";
-import { apiUrl } from "@/services/apiBase";
+import { getMediaUrl, hasMediaUrl } from "@/services/mediaUrls";
 import { ThemeName } from "@/theme/colors";
 import { useTheme } from "@/theme/ThemeProvider";
 
@@ -562,6 +563,27 @@ export default function AddEntryScreen() {
     ]),
   );
 
+  // Opened directly (e.g. a reload), the day's read that signs these media
+  // URLs never ran; fetch it so the existing thumbnails can load.
+  const [, setSignedUrlsVersion] = useState(0);
+  useEffect(() => {
+    if (!isEditMode || !date) return;
+    if (parsedExistingAssetIds.every(hasMediaUrl)) return;
+
+    let cancelled = false;
+    const [y, m, d] = date.split("-").map(Number);
+    getDayEntries(y, m, d)
+      .then(() => {
+        if (!cancelled) setSignedUrlsVersion((version) => version + 1);
+      })
+      .catch(() => {
+        // thumbnails fall back to the "Preview unavailable" tile
+      });
+    return () => {
+      cancelled = true;
+    };
+  }, [date, isEditMode, parsedExistingAssetIds]);
+
   useEffect(() => {
     if (!validationMessage) return;
 
@@ -1115,7 +1137,7 @@ export default function AddEntryScreen() {
                   ) : (
                     <ExpoImage
                       source={{
-                        uri: apiUrl(`/api/media/immich/${assetId}?type=${level}`),
+                        uri: getMediaUrl(assetId, level),
                       }}
                       style={styles.media}
                       cachePolicy="memory-disk"
@@ -13,7 +13,7 @@ import { LinearGradient } from "expo-linear-gradient";
 import { CalendarList } from "react-native-calendars";
 
 import { getCalendar } from "@/services/entries";
-import { apiUrl } from "@/services/apiBase";
+import { getMediaUrl } from "@/services/mediaUrls";
 import { Title, Muted } from "@/components/Text";
 import { useTheme } from "@/theme/ThemeProvider";
 
@@ -205,9 +205,7 @@ export default function CalendarScreen() {
               source={
                 hasEntry
                   ? {
-                      uri: apiUrl(
-                        `/api/media/immich/${assetId}?type=thumbnail`,
-                      ),
+                      uri: getMediaUrl(assetId, "thumbnail"),
                     }
                   : undefined
               }
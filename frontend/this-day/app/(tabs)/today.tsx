@@ -10,7 +10,7 @@ import {
   getSameDayPreviousYears,
   getSameDaySummary,
 } from "@/services/entries";
-import { apiUrl } from "@/services/apiBase";
+import { getMediaUrl } from "@/services/mediaUrls";
 import { useTheme } from "@/theme/ThemeProvider";
 import { ThemeName } from "@/theme/colors";
 
@@ -138,7 +138,7 @@ export default function TodayScreen() {
       checkedIds.current.add(assetId);
       try {
         const res = await fetch(
-          apiUrl(`/api/media/immich/${assetId}?type=full`),
+          getMediaUrl(assetId, "full"),
           { method: "HEAD" },
         );
         const type = res.headers.get("content-type") ?? "";
@@ -216,7 +216,7 @@ export default function TodayScreen() {
           {assetId ? (
             <Image
               source={{
-                uri: apiUrl(`/api/media/immich/${assetId}?type=thumbnail`),
+                uri: getMediaUrl(assetId, "thumbnail"),
               }}
               style={styles.image}
             />
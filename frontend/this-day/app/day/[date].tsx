@@ -17,7 +17,7 @@ import {
 import { Screen } from "@/components/Screen";
 import { Body, Muted, Title } from "@/components/Text";
 import { deleteEntry, getDayEntries } from "@/services/entries";
-import { apiUrl } from "@/services/apiBase";
+import { getMediaUrl } from "@/services/mediaUrls";
 import { ensureMediaCached } from "@/services/mediaCache";
 import { prefetchImageUrl } from "@/services/mediaPrefetch";
 import { setMediaOpenHint } from "@/services/mediaNavigationState";
@@ -150,9 +150,9 @@ export default function DayViewScreen() {
 
     const prefetchOne = async (assetId: string) => {
       prefetchedIds.current.add(assetId);
-      const mediaUrl = apiUrl(`/api/media/immich/${assetId}?type=full`);
-      const previewUrl = apiUrl(`/api/media/immich/${assetId}?type=preview`);
-      const thumbnailUrl = apiUrl(`/api/media/immich/${assetId}?type=thumbnail`);
+      const mediaUrl = getMediaUrl(assetId, "full");
+      const previewUrl = getMediaUrl(assetId, "preview");
+      const thumbnailUrl = getMediaUrl(assetId, "thumbnail");
 
       try {
         if (Platform.OS === "web") {
@@ -351,9 +351,7 @@ export default function DayViewScreen() {
                         <View style={styles.thumbWrap}>
                           <ExpoImage
                             source={{
-                              uri: apiUrl(
-                                `/api/media/immich/${assetId}?type=thumbnail`,
-                              ),
+                              uri: getMediaUrl(assetId, "thumbnail"),
                             }}
                             style={styles.thumbnail}
                             cachePolicy="memory-disk"
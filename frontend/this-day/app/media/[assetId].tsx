@@ -21,7 +21,7 @@ import { SafeAreaView } from "react-native-safe-area-context";
 import { Image as ExpoImage } from "expo-image";
 
 import { getDayEntries } from "@/services/entries";
-import { apiUrl } from "@/services/apiBase";
+import { getMediaUrl } from "@/services/mediaUrls";
 import { prefetchImageUrl } from "@/services/mediaPrefetch";
 import { consumeMediaOpenHint } from "@/services/mediaNavigationState";
 import { useTheme } from "@/theme/ThemeProvider";
@@ -199,7 +199,7 @@ export default function MediaViewerScreen() {
       const request: Promise<MediaDescriptor> = (async (): Promise<MediaDescriptor> => {
         try {
           const response = await fetch(
-            apiUrl(`/api/media/immich/${mediaId}?type=full`),
+            getMediaUrl(mediaId, "full"),
             { method: "HEAD" },
           );
           const contentType = response.headers.get("content-type") ?? null;
@@ -340,9 +340,9 @@ export default function MediaViewerScreen() {
       for (const item of windowItems) {
         if (cancelled) return;
 
-        const thumbnailUrl = apiUrl(`/api/media/immich/${item.id}?type=thumbnail`);
-        const previewUrl = apiUrl(`/api/media/immich/${item.id}?type=preview`);
-        const fullUrl = apiUrl(`/api/media/immich/${item.id}?type=full`);
+        const thumbnailUrl = getMediaUrl(item.id, "thumbnail");
+        const previewUrl = getMediaUrl(item.id, "preview");
+        const fullUrl = getMediaUrl(item.id, "full");
 
         await prefetchImageUrl(thumbnailUrl, false).catch(() => {
           // Best-effort only.
@@ -419,7 +419,7 @@ export default function MediaViewerScreen() {
     const current = items[activeIndex];
     if (!current) return;
 
-    const mediaUrl = apiUrl(`/api/media/immich/${current.id}?type=full`);
+    const mediaUrl = getMediaUrl(current.id, "full");
 
     if (Platform.OS === "web") {
       window.open(mediaUrl, "_blank");
@@ -603,9 +603,9 @@ function MediaSlide({
   onToggleControls: () => void;
   styles: ReturnType<typeof buildStyles>;
 }) {
-  const mediaUrl = apiUrl(`/api/media/immich/${item.id}?type=full`);
-  const previewUrl = apiUrl(`/api/media/immich/${item.id}?type=preview`);
-  const thumbnailUrl = apiUrl(`/api/media/immich/${item.id}?type=thumbnail`);
+  const mediaUrl = getMediaUrl(item.id, "full");
+  const previewUrl = getMediaUrl(item.id, "preview");
+  const thumbnailUrl = getMediaUrl(item.id, "thumbnail");
   const videoRef = useRef<Video>(null);
   const webVideoRef = useRef<any>(null);
 
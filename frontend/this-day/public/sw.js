@@ -17,6 +17,15 @@ async function trimCache(cache) {
   }
 }
 
+// Signed media URLs change with every signing window; key on the asset,
+// variant and user so a cached original outlives its URL.
+function cacheKeyOf(url) {
+  const key = new URL(url.href);
+  key.searchParams.delete("exp");
+  key.searchParams.delete("sig");
+  return key.href;
+}
+
 self.addEventListener("install", (event) => {
   event.waitUntil(self.skipWaiting());
 });
@@ -50,7 +59,8 @@ self.addEventListener("fetch", (event) => {
   event.respondWith(
     (async () => {
       const cache = await caches.open(FULL_MEDIA_CACHE);
-      const cached = await cache.match(request, { ignoreVary: true });
+      const cacheKey = cacheKeyOf(url);
+      const cached = await cache.match(cacheKey, { ignoreVary: true });
       if (cached) {
         self.clients.matchAll({ type: "window", includeUncontrolled: true }).then((clients) => {
           clients.forEach((client) =>
@@ -66,7 +76,7 @@ self.addEventListener("fetch", (event) => {
 
       const response = await fetch(request);
       if (response && response.ok) {
-        cache.put(request, response.clone());
+        cache.put(cacheKey, response.clone());
         trimCache(cache);
       }
       self.clients.matchAll({ type: "window", includeUncontrolled: true }).then((clients) => {
@@ -2,6 +2,7 @@ import axios from "axios";
 import { getToken } from "./auth";
 import { API_BASE_URL } from "./apiBase";
 import { clearToken } from "./auth";
+import { rememberMediaUrls } from "./mediaUrls";
 import { router } from "expo-router";
 
 const api = axios.create({
@@ -17,7 +18,11 @@ api.interceptors.request.use(async (config) => {
 });
 
 api.interceptors.response.use(
-  (response) => response,
+  (response) => {
+    // reads carry the signed media URLs the screens build image URIs from
+    rememberMediaUrls(response.data);
+    return response;
+  },
   async (error) => {
     const status = error?.response?.status;
     if (status === 401) {
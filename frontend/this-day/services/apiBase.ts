@@ -3,7 +3,18 @@ export const API_BASE_URL = (
   "https://thisdayapi.hostingfrompurva.xyz"
 ).replace(/\/+$/, "");
 
+// Media has its own server (MEDIA_HTTP_PORT). The gateway in front of the
+// backend routes /api/media to it, so by default media shares the API origin.
+export const MEDIA_BASE_URL = (
+  process.env.EXPO_PUBLIC_MEDIA_BASE_URL ?? API_BASE_URL
+).replace(/\/+$/, "");
+
 export function apiUrl(path: string) {
   if (!path) return API_BASE_URL;
   return `${API_BASE_URL}${path.startsWith("/") ? "" : "/"}${path}`;
 }
+
+export function mediaApiUrl(path: string) {
+  if (!path) return MEDIA_BASE_URL;
+  return `${MEDIA_BASE_URL}${path.startsWith("/") ? "" : "/"}${path}`;
+}
@@ -125,7 +125,10 @@ async function uploadSingleMedia(entryId: string, file: EntryFile) {
     form.append("clientMediaId", file.clientMediaId);
   }
   await appendFile(form, file);
-  await api.post(`/api/entries/${entryId}/media`, form);
+  // clientMediaId in the query lets the backend stream the file to Immich as it arrives
+  await api.post(`/api/entries/${entryId}/media`, form, {
+    params: file.clientMediaId ? { clientMediaId: file.clientMediaId } : { stream: true },
+  });
 }
 
 async function uploadSingleMediaWithRetry(entryId: string, file: EntryFile) {
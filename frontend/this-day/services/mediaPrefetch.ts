@@ -1,7 +1,7 @@
 import { Image, Platform } from "react-native";
 
 import api from "@/services/api";
-import { apiUrl } from "@/services/apiBase";
+import { getMediaUrl } from "@/services/mediaUrls";
 import { ensureMediaCached } from "@/services/mediaCache";
 
 export type MediaKind = "image" | "video" | "unknown";
@@ -50,13 +50,6 @@ export function isLikelyIOSWeb() {
   return isIOSDevice || isTouchMac;
 }
 
-export function getMediaUrl(
-  assetId: string,
-  type: "thumbnail" | "preview" | "full" = "full",
-) {
-  return apiUrl(`/api/media/immich/${assetId}?type=${type}`);
-}
-
 function toUniqueAssetIds(assetIds: Array<string | null | undefined>) {
   return Array.from(new Set(assetIds.filter(Boolean) as string[]));
 }
@@ -0,0 +1,48 @@
+import { mediaApiUrl } from "./apiBase";
+
+export type MediaVariant = "thumbnail" | "preview" | "full";
+
+// assetId → signed media URL from the latest read that listed the asset.
+// The media server only serves signed URLs, so every image goes through here.
+const signedUrls = new Map<string, string>();
+
+/**
+ * Records the signed URLs in a read response: `mediaUrls` (assetId → URL)
+ * on entries and `mediaUrl` next to `immichAssetId` on calendar rows.
+ */
+export function rememberMediaUrls(payload: unknown) {
+  if (Array.isArray(payload)) {
+    payload.forEach(rememberMediaUrls);
+    return;
+  }
+  if (!payload || typeof payload !== "object") return;
+
+  const record = payload as Record<string, unknown>;
+  const urls = record.mediaUrls;
+  if (urls && typeof urls === "object" && !Array.isArray(urls)) {
+    Object.entries(urls as Record<string, unknown>).forEach(([assetId, url]) => {
+      if (typeof url === "string") signedUrls.set(assetId, url);
+    });
+  }
+  if (typeof record.immichAssetId === "string" && typeof record.mediaUrl === "string") {
+    signedUrls.set(record.immichAssetId, record.mediaUrl);
+  }
+
+  Object.values(record).forEach((value) => {
+    if (value && typeof value === "object") rememberMediaUrls(value);
+  });
+}
+
+export function hasMediaUrl(assetId: string) {
+  return signedUrls.has(assetId);
+}
+
+export function getMediaUrl(assetId: string, type: MediaVariant = "full") {
+  const signed = signedUrls.get(assetId);
+  if (!signed) {
+    return mediaApiUrl(`/api/media/immich/${assetId}?type=${type}`);
+  }
+  // the signature does not cover `type`, so it can be appended as is
+  const url = signed.startsWith("/") ? mediaApiUrl(signed) : signed;
+  return `${url}${url.includes("?") ? "&" : "?"}type=${type}`;
+}